@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.overrun.tepv3.client.world.render.ArenaAllocator;
+import org.overrun.tepv3.client.world.render.ChunkDrawList;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks the bookkeeping of the chunk geometry arena without GL: the
+ * {@link ArenaAllocator} fits, merges and grows its free ranges, and a
+ * {@link ChunkDrawList} assembles the index counts and base vertices of the
+ * ranges. A random run of allocations and frees over a fragmented buffer is
+ * checked against a map of the used units.
+ * <p>
+ * Arguments: {@code [operations] [seed]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class ArenaCheck {
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+        checkMerging();
+        checkGrowing();
+        checkDrawList();
+        checkRandom(operations, seed);
+        System.out.println("All checks passed");
+    }
+
+    private static void checkMerging() {
+        var allocator = new ArenaAllocator(100);
+        int a = allocator.allocate(10);
+        int b = allocator.allocate(20);
+        int c = allocator.allocate(30);
+        check(a == 0 && b == 10 && c == 30, "allocated offsets " + a + ", " + b + ", " + c);
+        check(allocator.getUsed() == 60, "used " + allocator.getUsed());
+        check(allocator.getFreeRangeCount() == 1, "free ranges after allocating");
+
+        allocator.free(b, 20);
+        check(allocator.getFreeRangeCount() == 2, "a hole and the tail");
+        // Merges with the next free range
+        allocator.free(a, 10);
+        check(allocator.getFreeRangeCount() == 2, "merged with the next range");
+        // The smallest fit is the hole of 30, not the tail of 40
+        int d = allocator.allocate(25);
+        check(d == 0, "best fit offset " + d);
+        // Merges with the previous and the next free ranges at once
+        allocator.free(c, 30);
+        check(allocator.getFreeRangeCount() == 1, "merged with both neighbours");
+        check(allocator.allocate(75) == 25, "the merged range is whole");
+        check(allocator.allocate(1) == -1, "a full buffer");
+        allocator.free(d, 25);
+        allocator.free(25, 75);
+        check(allocator.getUsed() == 0 && allocator.getFreeRangeCount() == 1, "everything freed");
+
+        expectThrow(() -> allocator.free(10, 5), "freeing a free range");
+        expectThrow(() -> allocator.free(90, 20), "freeing past the capacity");
+        expectThrow(() -> allocator.allocate(0), "allocating nothing");
+    }
+
+    private static void checkGrowing() {
+        var allocator = new ArenaAllocator(64);
+        int a = allocator.allocate(48);
+        check(allocator.allocate(32) == -1, "no fit before growing");
+        // The free tail grows in place
+        allocator.grow(128);
+        check(allocator.getFreeRangeCount() == 1, "tail merged on growing");
+        check(allocator.allocate(80) == 48, "allocated across the old end");
+        // A full buffer grows with a new range
+        allocator.grow(256);
+        check(allocator.getFreeRangeCount() == 1, "new range on growing");
+        check(allocator.allocate(128) == 128, "allocated in the new range");
+        allocator.grow(100);
+        check(allocator.getCapacity() == 256, "shrinking is ignored");
+        allocator.free(a, 48);
+        check(allocator.getUsed() == 208, "used " + allocator.getUsed());
+    }
+
+    private static void checkDrawList() {
+        check(ChunkDrawList.getOrigin(0) == 64 && ChunkDrawList.getOrigin(127) == 64, "origin of group 0");
+        check(ChunkDrawList.getOrigin(128) == 192 && ChunkDrawList.getOrigin(-1) == -64, "origin of groups 1 and -1");
+
+        var allocator = new ArenaAllocator(1 << 16);
+        var list = new ChunkDrawList(64, 64, 64);
+        check(list.isEmpty(), "a new list is empty");
+        // More chunks than the initial arrays hold
+        int chunks = 100;
+        var offsets = new int[chunks];
+        var sizes = new int[chunks];
+        int max = 0;
+        for (int i = 0; i < chunks; i++) {
+            sizes[i] = (i % 7 + 1) * 4;
+            offsets[i] = allocator.allocate(sizes[i]);
+            list.add(offsets[i], sizes[i]);
+            max = Math.max(max, sizes[i]);
+        }
+        check(list.size() == chunks, "list size " + list.size());
+        for (int i = 0; i < chunks; i++) {
+            check(list.getBaseVertices()[i] == offsets[i], "base vertex of chunk " + i);
+            check(list.getCounts()[i] == sizes[i] / 4 * 6, "index count of chunk " + i);
+        }
+        check(list.getMaxVertexCount() == max, "max vertex count " + list.getMaxVertexCount());
+        list.clear();
+        check(list.isEmpty() && list.getMaxVertexCount() == 0, "a cleared list is empty");
+    }
+
+    private static void checkRandom(int operations, long seed) {
+        var random = new Random(seed);
+        int capacity = 1 << 16;
+        var allocator = new ArenaAllocator(capacity);
+        var usedUnits = new boolean[1 << 20];
+        var live = new ArrayList<int[]>();
+        int used = 0;
+        for (int op = 0; op < operations; op++) {
+            // Keep the buffer about half full, in chunk mesh sized ranges
+            if (live.isEmpty() || random.nextInt(capacity) > used) {
+                int size = 4 + random.nextInt(128) * 4;
+                int offset = allocator.allocate(size);
+                if (offset < 0) {
+                    capacity *= 2;
+                    allocator.grow(capacity);
+                    offset = allocator.allocate(size);
+                    check(offset >= 0, "no fit after growing");
+                }
+                for (int i = offset; i < offset + size; i++) {
+                    check(!usedUnits[i], "overlapping ranges at " + i);
+                    usedUnits[i] = true;
+                }
+                live.add(new int[]{offset, size});
+                used += size;
+            } else {
+                int index = random.nextInt(live.size());
+                var range = live.get(index);
+                live.set(index, live.get(live.size() - 1));
+                live.remove(live.size() - 1);
+                allocator.free(range[0], range[1]);
+                for (int i = range[0]; i < range[0] + range[1]; i++) {
+                    usedUnits[i] = false;
+                }
+                used -= range[1];
+            }
+        }
+        check(allocator.getUsed() == used, "used " + allocator.getUsed() + ", expected " + used);
+        // Fully merged, the free ranges are the runs of free units
+        int runs = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (!usedUnits[i] && (i == 0 || usedUnits[i - 1]))
+                ++runs;
+        }
+        check(allocator.getFreeRangeCount() == runs,
+            "free ranges " + allocator.getFreeRangeCount() + ", expected " + runs);
+        System.out.printf("%d operations: %d free ranges, %d/%d units used%n",
+            operations, runs, used, capacity);
+    }
+
+    private static void expectThrow(Runnable action, String what) {
+        try {
+            action.run();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return;
+        }
+        throw new IllegalStateException("No exception from " + what);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition)
+            throw new IllegalStateException("Check failed: " + what);
+    }
+}
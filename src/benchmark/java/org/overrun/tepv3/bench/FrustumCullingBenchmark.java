@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.joml.Matrix4f;
+import org.overrun.tepv3.client.render.Frustum;
+import org.overrun.tepv3.client.world.ClientChunk;
+import org.overrun.tepv3.client.world.render.ChunkCuller;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+
+import java.util.ArrayList;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * Measures frustum culling over chunk grids of growing size: one box test per
+ * chunk against the {@link ChunkCuller}, which tests the cells first. The
+ * camera is at the center and turns around; the far plane is at 1000 blocks,
+ * so the chunks in the frustum stop growing with the grid. It runs without GL.
+ * <p>
+ * Arguments: {@code [rounds]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class FrustumCullingBenchmark {
+    private static final int DIRECTIONS = 8;
+    private static final int HEIGHT = 4;
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        try (var world = new World(42L, 256, 64, 256, 1, NoiseSampling.BICUBIC_4)) {
+            for (int side : new int[]{32, 64, 128, 256}) {
+                run(world, side, rounds);
+            }
+        }
+    }
+
+    private static void run(World world, int side, int rounds) {
+        var chunks = new ArrayList<ClientChunk>();
+        var culler = new ChunkCuller();
+        for (int x = 0; x < side; x++) {
+            for (int z = 0; z < side; z++) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    int x0 = x * CHUNK_SIZE, y0 = y * CHUNK_SIZE, z0 = z * CHUNK_SIZE;
+                    var chunk = new ClientChunk(world, null, x0, y0, z0, x0 + CHUNK_SIZE, y0 + CHUNK_SIZE, z0 + CHUNK_SIZE);
+                    chunks.add(chunk);
+                    culler.add(chunk);
+                }
+            }
+        }
+        float center = side * CHUNK_SIZE / 2.0f;
+        var projection = new Matrix4f().perspective((float) Math.toRadians(90), 16f / 9f, 0.05f, 1000.0f);
+        var modelView = new Matrix4f();
+        var frustum = new Frustum();
+        long linearTime = 0, cullerTime = 0, linearCount = 0, cullerCount = 0, chunkTests = 0;
+        for (int round = -1; round < rounds; round++) {
+            modelView.rotationY((float) (Math.PI * 2 * Math.floorMod(round, DIRECTIONS) / DIRECTIONS))
+                .translate(-center, -40, -center);
+            frustum.set(projection, modelView);
+            long t0 = System.nanoTime();
+            int linear = 0;
+            for (var chunk : chunks) {
+                if (frustum.testAab(chunk.box))
+                    ++linear;
+            }
+            long t1 = System.nanoTime();
+            int culled = culler.cull(frustum);
+            long t2 = System.nanoTime();
+            // The first round warms up the JIT
+            if (round >= 0) {
+                linearTime += t1 - t0;
+                cullerTime += t2 - t1;
+                linearCount += linear;
+                cullerCount += culled;
+                chunkTests += culler.getChunkTests();
+            }
+        }
+        System.out.printf("%7d chunks, %5d cells: %7.1f in the frustum by chunk, %7.1f by culler; per chunk %8.3f ms, culler %8.3f ms, %7.1f chunks tested%n",
+            chunks.size(), culler.getCellCount(),
+            (double) linearCount / rounds,
+            (double) cullerCount / rounds,
+            linearTime / 1e6 / rounds,
+            cullerTime / 1e6 / rounds,
+            (double) chunkTests / rounds);
+    }
+}
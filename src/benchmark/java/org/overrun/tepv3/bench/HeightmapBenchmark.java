@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.overrun.tepv3.world.SimplexHeightmap;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+import org.overrun.tepv3.world.gen.OctaveSimplexNoise;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+import static org.overrun.tepv3.world.gen.NoiseSampling.Interpolation.BICUBIC;
+import static org.overrun.tepv3.world.gen.NoiseSampling.Interpolation.BILINEAR;
+
+/**
+ * Measures heightmap generation time per noise sampling quality, and the
+ * height error against full resolution sampling.
+ * <p>
+ * Arguments: {@code [radius] [rounds] [height]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class HeightmapBenchmark {
+    private static final NoiseSampling[] SAMPLINGS = {
+        NoiseSampling.FULL,
+        new NoiseSampling(2, BILINEAR),
+        new NoiseSampling(2, BICUBIC),
+        NoiseSampling.BILINEAR_4,
+        NoiseSampling.BICUBIC_4,
+        new NoiseSampling(8, BILINEAR),
+        new NoiseSampling(8, BICUBIC)
+    };
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        // The scale of the default 256x256 world
+        float scale = 2.0f / (256 + 256);
+        var noise = SimplexHeightmap.createNoise(42L);
+        int side = radius * 2 + 1;
+        int patches = side * side;
+        System.out.printf("%d patches of %dx%d, height %d%n", patches, CHUNK_SIZE, CHUNK_SIZE, height);
+
+        var reference = generateAll(noise, NoiseSampling.FULL, radius, height, scale);
+        double fullTime = 0;
+        System.out.printf("%-12s %10s %8s %10s %8s %10s%n", "sampling", "us/patch", "speedup", "mean err", "max err", "differ");
+        for (var sampling : SAMPLINGS) {
+            int[][] heights = null;
+            // Warm up the JIT, then keep the best round
+            generateAll(noise, sampling, radius, height, scale);
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                long t0 = System.nanoTime();
+                heights = generateAll(noise, sampling, radius, height, scale);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            double time = best / 1e3 / patches;
+            if (sampling == NoiseSampling.FULL)
+                fullTime = time;
+
+            long sumErr = 0, differ = 0;
+            int maxErr = 0;
+            for (int i = 0; i < patches; i++) {
+                for (int j = 0; j < heights[i].length; j++) {
+                    int err = Math.abs(heights[i][j] - reference[i][j]);
+                    sumErr += err;
+                    maxErr = Math.max(maxErr, err);
+                    if (err != 0)
+                        ++differ;
+                }
+            }
+            long columns = (long) patches * CHUNK_SIZE * CHUNK_SIZE;
+            System.out.printf("%-12s %10.2f %7.2fx %10.4f %8d %9.2f%%%n",
+                sampling,
+                time,
+                fullTime / time,
+                (double) sumErr / columns,
+                maxErr,
+                100.0 * differ / columns);
+        }
+    }
+
+    private static int[][] generateAll(OctaveSimplexNoise noise,
+                                       NoiseSampling sampling,
+                                       int radius,
+                                       int height,
+                                       float scale) {
+        int side = radius * 2 + 1;
+        var result = new int[side * side][];
+        for (int i = 0; i < result.length; i++) {
+            int x = i % side - radius;
+            int z = i / side - radius;
+            result[i] = SimplexHeightmap.generate(noise,
+                sampling,
+                x * CHUNK_SIZE,
+                z * CHUNK_SIZE,
+                CHUNK_SIZE,
+                CHUNK_SIZE,
+                height,
+                scale);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.overrun.tepv3.client.world.ChunkLod;
+import org.overrun.tepv3.client.world.ClientChunk;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+
+import java.util.ArrayList;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * Measures the chunk meshes at each level of detail on generated terrain: the
+ * vertex count and the build time, with all chunks at the same level. It runs
+ * without GL, over an atlas laid out in memory.
+ * <p>
+ * Arguments: {@code [radius] [rounds] [greedy]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class LodBenchmark {
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        boolean greedy = args.length > 2 && Boolean.parseBoolean(args[2]);
+        MeshingBenchmark.putAtlas();
+        try (var world = new World(42L, 256, 64, 256, Runtime.getRuntime().availableProcessors(), NoiseSampling.BICUBIC_4)) {
+            world.loadChunksAround(0, 0, radius);
+            world.applyLightUpdates();
+            var chunks = new ArrayList<ClientChunk>();
+            for (var chunk : world.getLoadedChunks()) {
+                if (chunk.isEmpty())
+                    continue;
+                int x0 = chunk.x * CHUNK_SIZE, y0 = chunk.y * CHUNK_SIZE, z0 = chunk.z * CHUNK_SIZE;
+                chunks.add(new ClientChunk(world, null, x0, y0, z0, x0 + CHUNK_SIZE, y0 + CHUNK_SIZE, z0 + CHUNK_SIZE));
+            }
+            System.out.printf("%d non-empty chunks, %s%n", chunks.size(), greedy ? "greedy" : "per face");
+            for (int round = -1; round < rounds; round++) {
+                long fullVertices = 0;
+                for (int level = 0; level <= ChunkLod.MAX_LEVEL; level++) {
+                    long vertices = 0;
+                    long time = 0;
+                    for (var chunk : chunks) {
+                        chunk.setLevel(level);
+                        var region = chunk.snapshot();
+                        long t0 = System.nanoTime();
+                        var mesh = chunk.build(region, greedy);
+                        time += System.nanoTime() - t0;
+                        vertices += mesh.getVertexCount();
+                        mesh.free();
+                    }
+                    if (level == 0)
+                        fullVertices = vertices;
+                    // The first round warms up the JIT
+                    if (round >= 0) {
+                        System.out.printf("round %d: level %d %9d vertices %8.3f ms/chunk, %.1f%% of the vertices%n",
+                            round, level, vertices, time / 1e6 / chunks.size(), 100.0 * vertices / fullVertices);
+                    }
+                }
+            }
+        }
+    }
+}
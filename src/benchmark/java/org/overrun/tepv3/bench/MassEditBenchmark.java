@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.overrun.tepv3.world.IWorldListener;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.block.Blocks;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+
+/**
+ * Measures mass block edits through {@link World#setBlockState}: filling and
+ * clearing a cube in the orders that hit each case of the lightmap update,
+ * then the light engine run over the edits, and checks the lightmap against
+ * a full rescan afterwards. The same passes are run through
+ * {@link World#edit} to compare with the batched edits.
+ * <p>
+ * Arguments: {@code [size] [rounds]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class MassEditBenchmark {
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        try (var world = new World(42L, 256, size, 256, 1, NoiseSampling.FULL)) {
+            world.loadChunksAround(size / 2, size / 2, (size >> 5) + 1);
+            world.applyLightUpdates();
+            var counter = new LightCounter();
+            world.addListener(counter);
+            long edits = (long) size * size * size;
+            System.out.printf("%d^3 = %d edits per pass%n", size, edits);
+            for (int round = -1; round < rounds; round++) {
+                // The first round warms up the JIT
+                boolean print = round >= 0;
+                for (boolean batch : new boolean[]{false, true}) {
+                    // Every block lands above the top
+                    pass(world, counter, "fill bottom-up", Blocks.STONE, size, false, batch, print);
+                    // Every block removed is the top
+                    pass(world, counter, "clear top-down", Blocks.AIR, size, true, batch, print);
+                    // Every block after the first lands below the top
+                    pass(world, counter, "fill top-down", Blocks.STONE, size, true, batch, print);
+                    // Every block removed is below the top, until the last
+                    pass(world, counter, "clear bottom-up", Blocks.AIR, size, false, batch, print);
+                }
+            }
+            counter.changes = 0;
+            world.generateLightmap(0, 0, size, size);
+            System.out.println(counter.changes == 0
+                ? "Lightmap matches a full rescan"
+                : "Lightmap differs from a full rescan in " + counter.changes + " columns!");
+        }
+    }
+
+    private static void pass(World world,
+                             LightCounter counter,
+                             String name,
+                             Block block,
+                             int size,
+                             boolean topDown,
+                             boolean batch,
+                             boolean print) {
+        counter.changes = 0;
+        counter.events = 0;
+        long t0 = System.nanoTime();
+        if (batch) {
+            world.edit(edit -> {
+                for (int i = 0; i < size; i++) {
+                    int y = topDown ? size - 1 - i : i;
+                    edit.fill(0, y, 0, size - 1, y, size - 1, block);
+                }
+            });
+        } else {
+            for (int i = 0; i < size; i++) {
+                int y = topDown ? size - 1 - i : i;
+                for (int x = 0; x < size; x++) {
+                    for (int z = 0; z < size; z++) {
+                        world.setBlockState(block, x, y, z, IWorldListener.NOTIFY_ALL);
+                    }
+                }
+            }
+        }
+        long time = System.nanoTime() - t0;
+        world.applyLightUpdates();
+        long lightTime = System.nanoTime() - t0 - time;
+        if (print) {
+            long edits = (long) size * size * size;
+            System.out.printf("%-8s %-16s %8.1f ms %12.0f edits/s %10d lightmap changes %10d events, light engine %8.1f ms%n",
+                batch ? "batch" : "single", name, time / 1e6, edits / (time / 1e9), counter.changes, counter.events, lightTime / 1e6);
+        }
+    }
+
+    private static final class LightCounter implements IWorldListener {
+        private long changes;
+        private long events;
+
+        @Override
+        public void blockChanged(int x, int y, int z) {
+            ++events;
+        }
+
+        @Override
+        public void blocksChanged(int x0, int y0, int z0, int x1, int y1, int z1) {
+            ++events;
+        }
+
+        @Override
+        public void lightColumnChanged(int x, int z, int y0, int y1) {
+            ++changes;
+        }
+
+        @Override
+        public void allChanged() {
+        }
+
+        @Override
+        public void lightChanged(int x, int y, int z, int sides) {
+        }
+
+        @Override
+        public void chunkLoaded(int x, int y, int z) {
+        }
+
+        @Override
+        public void chunkUnloaded(int x, int y, int z) {
+        }
+    }
+}
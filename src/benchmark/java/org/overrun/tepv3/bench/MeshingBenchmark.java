@@ -0,0 +1,119 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.overrun.tepv3.client.tex.SpriteAtlas;
+import org.overrun.tepv3.client.tex.SpriteAtlasTextures;
+import org.overrun.tepv3.client.world.ClientChunk;
+import org.overrun.tepv3.client.world.ChunkRenderRegion;
+import org.overrun.tepv3.util.Identifier;
+import org.overrun.tepv3.util.registry.Registries;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.block.Blocks;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * Measures chunk meshing on generated terrain: the vertex count, the vertex
+ * data size and the build time of the greedy mesher against one quad per face. It runs
+ * without GL, over an atlas laid out in memory.
+ * <p>
+ * Arguments: {@code [radius] [rounds]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class MeshingBenchmark {
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        putAtlas();
+        try (var world = new World(42L, 256, 64, 256, Runtime.getRuntime().availableProcessors(), NoiseSampling.BICUBIC_4)) {
+            world.loadChunksAround(0, 0, radius);
+            world.applyLightUpdates();
+            var chunks = new ArrayList<ClientChunk>();
+            var regions = new ArrayList<ChunkRenderRegion>();
+            for (var chunk : world.getLoadedChunks()) {
+                if (chunk.isEmpty())
+                    continue;
+                int x0 = chunk.x * CHUNK_SIZE, y0 = chunk.y * CHUNK_SIZE, z0 = chunk.z * CHUNK_SIZE;
+                var clientChunk = new ClientChunk(world, null, x0, y0, z0, x0 + CHUNK_SIZE, y0 + CHUNK_SIZE, z0 + CHUNK_SIZE);
+                chunks.add(clientChunk);
+                regions.add(clientChunk.snapshot());
+            }
+            System.out.printf("%d non-empty chunks%n", chunks.size());
+            for (int round = -1; round < rounds; round++) {
+                long[] perFace = build(chunks, regions, false);
+                long[] greedy = build(chunks, regions, true);
+                // The first round warms up the JIT
+                if (round >= 0) {
+                    System.out.printf("round %d: per face %9d vertices %8.1f KiB %8.3f ms/chunk, greedy %9d vertices %8.1f KiB %8.3f ms/chunk, %.1f%% of the vertices%n",
+                        round,
+                        perFace[0], perFace[2] / 1024.0, perFace[1] / 1e6 / chunks.size(),
+                        greedy[0], greedy[2] / 1024.0, greedy[1] / 1e6 / chunks.size(),
+                        100.0 * greedy[0] / perFace[0]);
+                }
+            }
+        }
+    }
+
+    private static long[] build(ArrayList<ClientChunk> chunks, ArrayList<ChunkRenderRegion> regions, boolean greedy) {
+        long vertices = 0;
+        long time = 0;
+        long bytes = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            long t0 = System.nanoTime();
+            var mesh = chunks.get(i).build(regions.get(i), greedy);
+            time += System.nanoTime() - t0;
+            bytes += mesh.getRawData().remaining();
+            vertices += mesh.getRawData().remaining() / mesh.getFormat().getVertexSize();
+            mesh.free();
+        }
+        return new long[]{vertices, time, bytes};
+    }
+
+    /**
+     * Lay out the block sprites in a row, as the atlas would be without GL.
+     */
+    static void putAtlas() {
+        var ids = new ArrayList<Identifier>();
+        for (var block : List.of(Blocks.GRASS_BLOCK, Blocks.DIRT, Blocks.STONE, Blocks.COBBLESTONE, Blocks.BEDROCK)) {
+            ids.add(Registries.BLOCK.getId(block));
+        }
+        ids.add(new Identifier("grass_block_top"));
+        ids.add(new Identifier("grass_block_side"));
+        var infos = new HashMap<Identifier, SpriteAtlas.Info>();
+        for (int i = 0; i < ids.size(); i++) {
+            infos.put(ids.get(i), new SpriteAtlas.Info(ids.get(i), i * 16, 0, 16, 16));
+        }
+        SpriteAtlasTextures.putAtlas(new SpriteAtlas(SpriteAtlasTextures.BLOCK_ATLAS, infos, ids.size() * 16, 16, 0));
+    }
+}
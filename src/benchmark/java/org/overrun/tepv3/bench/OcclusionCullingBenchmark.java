@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.overrun.tepv3.client.world.ClientChunk;
+import org.overrun.tepv3.client.world.render.VisibilityGraph;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * Measures the occlusion culling of the visibility graph on generated terrain:
+ * the count of chunks reached from a camera against the count in its frustum,
+ * and the time of a walk. The camera is put above the ground at the center,
+ * then deep under it, and looks toward 8 directions. It runs without GL.
+ * <p>
+ * Arguments: {@code [radius] [rounds]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class OcclusionCullingBenchmark {
+    private static final int DIRECTIONS = 8;
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        MeshingBenchmark.putAtlas();
+        try (var world = new World(42L, 256, 64, 256, Runtime.getRuntime().availableProcessors(), NoiseSampling.BICUBIC_4)) {
+            world.loadChunksAround(0, 0, radius);
+            world.applyLightUpdates();
+            var chunks = new Long2ObjectOpenHashMap<ClientChunk>();
+            for (var chunk : world.getLoadedChunks()) {
+                int x0 = chunk.x * CHUNK_SIZE, y0 = chunk.y * CHUNK_SIZE, z0 = chunk.z * CHUNK_SIZE;
+                var clientChunk = new ClientChunk(world, null, x0, y0, z0, x0 + CHUNK_SIZE, y0 + CHUNK_SIZE, z0 + CHUNK_SIZE);
+                clientChunk.rebuild(true);
+                chunks.put(World.getChunkPos(chunk.x, chunk.y, chunk.z), clientChunk);
+            }
+            System.out.printf("%d chunks%n", chunks.size());
+            int surface = world.getHeight() - 1;
+            while (surface > 0 && !world.isLightBlocker(0, surface, 0))
+                --surface;
+            run("surface", chunks, 0.5f, surface + 2.62f, 0.5f, rounds);
+            run("underground", chunks, 0.5f, 4.62f, 0.5f, rounds);
+        }
+    }
+
+    private static void run(String name,
+                            Long2ObjectOpenHashMap<ClientChunk> chunks,
+                            float x, float y, float z,
+                            int rounds) {
+        var start = chunks.get(World.getChunkPos(Math.floorDiv((int) Math.floor(x), CHUNK_SIZE),
+            Math.floorDiv((int) Math.floor(y), CHUNK_SIZE),
+            Math.floorDiv((int) Math.floor(z), CHUNK_SIZE)));
+        if (start == null) {
+            System.out.printf("%s: the camera is out of the loaded chunks%n", name);
+            return;
+        }
+        var graph = new VisibilityGraph();
+        var projection = new Matrix4f().perspective((float) Math.toRadians(90), 16f / 9f, 0.05f, 1000.0f);
+        var clip = new Matrix4f();
+        var frustum = new FrustumIntersection();
+        VisibilityGraph.ChunkLookup lookup = (cx, cy, cz) -> chunks.get(World.getChunkPos(cx, cy, cz));
+        long inFrustum = 0, visited = 0, time = 0;
+        for (int dir = 0; dir < DIRECTIONS; dir++) {
+            clip.set(projection)
+                .rotateY((float) (Math.PI * 2 * dir / DIRECTIONS))
+                .translate(-x, -y, -z);
+            frustum.set(clip);
+            for (var chunk : chunks.values()) {
+                if (test(frustum, chunk))
+                    ++inFrustum;
+            }
+            visited += graph.walk(start, lookup, chunk -> test(frustum, chunk), chunk -> {
+            });
+            // Warm up the JIT, then time the walks
+            for (int i = 0; i < rounds; i++) {
+                graph.walk(start, lookup, chunk -> test(frustum, chunk), chunk -> {
+                });
+            }
+            long t0 = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                graph.walk(start, lookup, chunk -> test(frustum, chunk), chunk -> {
+                });
+            }
+            time += System.nanoTime() - t0;
+        }
+        System.out.printf("%s (y=%.1f): %6.1f chunks in the frustum, %6.1f visited, %.1f%% drawn, %8.3f ms/walk%n",
+            name, y,
+            (double) inFrustum / DIRECTIONS,
+            (double) visited / DIRECTIONS,
+            100.0 * visited / inFrustum,
+            time / 1e6 / rounds / DIRECTIONS);
+    }
+
+    private static boolean test(FrustumIntersection frustum, ClientChunk chunk) {
+        return frustum.testAab(chunk.x0, chunk.y0, chunk.z0, chunk.x1, chunk.y1, chunk.z1);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.overrun.tepv3.util.registry.Registries;
+import org.overrun.tepv3.util.registry.Registry;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.block.AbstractBlock.Settings;
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.block.BlockState;
+import org.overrun.tepv3.world.block.Blocks;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+
+import java.util.Random;
+
+/**
+ * Measures {@link World#randomTick} over a loaded area: the sampled random
+ * ticks against visiting every block of the same area, as the old full
+ * scan did.
+ * <p>
+ * No shipped block has random ticks, so the benchmark registers its own
+ * {@linkplain TickingBlock tickable block} and puts it in place of the grass.
+ * </p>
+ * <p>
+ * Arguments: {@code [radius] [ticks]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class RandomTickBenchmark {
+    private static final TickingBlock TICKING_BLOCK = Registry.register(Registries.BLOCK,
+        6,
+        "ticking_block",
+        new TickingBlock(new Settings().ticksRandomly()));
+
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        try (var world = new World(42L, 256, 64, 256, Runtime.getRuntime().availableProcessors(), NoiseSampling.FULL)) {
+            world.loadChunksAround(0, 0, radius);
+            int side = (radius * 2 + 1) * 16;
+            int placed = replaceGrass(world, -radius * 16, (radius + 1) * 16);
+            world.applyLightUpdates();
+            System.out.printf("%d^2 x %d blocks, %d tickable, %d ticks%n", side, world.height, placed, ticks);
+            for (int round = -1; round < 3; round++) {
+                TICKING_BLOCK.ticked = 0;
+                long t0 = System.nanoTime();
+                for (int i = 0; i < ticks; i++) {
+                    world.randomTick(3);
+                }
+                long t1 = System.nanoTime();
+                long visited = 0;
+                for (int i = 0; i < ticks; i++) {
+                    visited += scan(world, -radius * 16, (radius + 1) * 16);
+                }
+                long t2 = System.nanoTime();
+                // The first round warms up the JIT
+                if (round >= 0) {
+                    System.out.printf("round %d: sampled %8.3f ms/tick (%d ticked), full scan %8.3f ms/tick (%d blocks)%n",
+                        round, (t1 - t0) / 1e6 / ticks, TICKING_BLOCK.ticked / ticks, (t2 - t1) / 1e6 / ticks, visited / ticks);
+                }
+            }
+        }
+    }
+
+    private static long scan(World world, int min, int max) {
+        long count = 0;
+        for (int x = min; x < max; x++) {
+            for (int y = 0; y < world.height; y++) {
+                for (int z = min; z < max; z++) {
+                    if (world.getBlockState(x, y, z).hasRandomTicks())
+                        ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int replaceGrass(World world, int min, int max) {
+        int count = 0;
+        for (int x = min; x < max; x++) {
+            for (int y = 0; y < world.height; y++) {
+                for (int z = min; z < max; z++) {
+                    if (world.getBlockState(x, y, z) == Blocks.GRASS_BLOCK) {
+                        world.setBlockState(TICKING_BLOCK, x, y, z);
+                        ++count;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A block that only counts its random ticks.
+     */
+    private static final class TickingBlock extends Block {
+        private long ticked;
+
+        private TickingBlock(Settings settings) {
+            super(settings);
+        }
+
+        @Override
+        public void randomTick(BlockState state,
+                               World world,
+                               int x,
+                               int y,
+                               int z,
+                               Random random) {
+            ++ticked;
+        }
+    }
+}
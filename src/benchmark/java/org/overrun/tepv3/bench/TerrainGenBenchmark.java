@@ -0,0 +1,112 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.bench;
+
+import org.overrun.tepv3.util.BlockPos;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+import org.overrun.tepv3.world.gen.ProtoColumn;
+
+import java.util.Arrays;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * Measures terrain generation throughput in columns per second, the staged
+ * pipeline on one thread against the same pipeline on all threads, and
+ * checks both produce the same blocks and lightmaps as the serial reference
+ * {@link org.overrun.tepv3.world.gen.TerrainGenerator#generateColumn
+ * generateColumn}.
+ * <p>
+ * Arguments: {@code [radius] [threads] [rounds]}
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class TerrainGenBenchmark {
+    public static void main(String[] args) {
+        int radius = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        try (var world = new World(42L, 256, 64, 256, threads, NoiseSampling.FULL);
+             var serialWorld = new World(42L, 256, 64, 256, 1, NoiseSampling.FULL)) {
+            var generator = world.getGenerator();
+            var serialGenerator = serialWorld.getGenerator();
+            int side = radius * 2 + 1;
+            var columns = new long[side * side];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = BlockPos.getLongValue(i % side - radius, 0, i / side - radius);
+            }
+            System.out.printf("%d columns, %d threads%n", columns.length, generator.getParallelism());
+
+            ProtoColumn[] serial = null;
+            ProtoColumn[] parallel = null;
+            for (int round = -1; round < rounds; round++) {
+                serialGenerator.clear();
+                long t0 = System.nanoTime();
+                serial = serialGenerator.generateColumns(columns);
+                long t1 = System.nanoTime();
+                generator.clear();
+                parallel = generator.generateColumns(columns);
+                long t2 = System.nanoTime();
+                // The first round warms up the JIT
+                if (round >= 0) {
+                    double serialRate = columns.length / ((t1 - t0) / 1e9);
+                    double parallelRate = columns.length / ((t2 - t1) / 1e9);
+                    System.out.printf("round %d: serial %.1f columns/s, parallel %.1f columns/s (%.2fx)%n",
+                        round, serialRate, parallelRate, parallelRate / serialRate);
+                }
+            }
+            var reference = new ProtoColumn[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                reference[i] = generator.generateColumn(BlockPos.xFromLong(columns[i]), BlockPos.zFromLong(columns[i]));
+            }
+            System.out.println(sameBlocks(reference, serial) && sameBlocks(reference, parallel)
+                ? "Output is identical"
+                : "Output differs!");
+        }
+    }
+
+    private static boolean sameBlocks(ProtoColumn[] a, ProtoColumn[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (!Arrays.equals(a[i].getLightmap(), b[i].getLightmap()))
+                return false;
+            var ca = a[i].getChunks();
+            var cb = b[i].getChunks();
+            for (int j = 0; j < ca.length; j++) {
+                for (int x = 0; x < CHUNK_SIZE; x++) {
+                    for (int y = 0; y < CHUNK_SIZE; y++) {
+                        for (int z = 0; z < CHUNK_SIZE; z++) {
+                            if (ca[j].getBlockState(x, y, z) != cb[j].getBlockState(x, y, z))
+                                return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -25,6 +25,7 @@
 package org.overrun.tepv3;
 
 import org.lwjgl.glfw.GLFWErrorCallback;
+import org.overrun.tepv3.world.gen.NoiseSampling;
 
 /**
  * <h2>The configs</h2>
@@ -65,4 +66,58 @@ public class Configs {
      * Ticks per seconds.
      */
     public static int tps = 20;
+    /**
+     * The radius of loaded chunk columns around the player.
+     */
+    public static int viewDistance = 8;
+    /**
+     * The parallelism of world generation.
+     */
+    public static int worldGenThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The quality of terrain noise sampling.
+     * <p>
+     * {@link NoiseSampling#FULL} samples every block; coarser cells
+     * generate faster with a small height error.
+     * </p>
+     */
+    public static NoiseSampling terrainSampling = NoiseSampling.BICUBIC_4;
+    /**
+     * The parallelism of chunk meshing.
+     */
+    public static int chunkBuilderThreads = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+    /**
+     * The time per frame for chunk rebuilds in milliseconds: uploading the
+     * finished meshes and snapshotting the dirty chunks. The meshing workers
+     * are given about as much work per worker.
+     */
+    public static float chunkRebuildBudget = 4.0f;
+    /**
+     * Merge the adjacent faces of the chunk meshes into larger quads.
+     */
+    public static boolean greedyMeshing = true;
+    /**
+     * Keep the vertices of the meshes in memory after they are uploaded, to
+     * inspect them when debugging.
+     */
+    public static boolean keepMeshData = false;
+    /**
+     * Skip the chunks hidden behind solid ground, by a walk of the chunks
+     * seen through each other from the camera.
+     */
+    public static boolean occlusionCulling = true;
+    /**
+     * The distance in blocks from which the chunks are meshed at half the
+     * resolution; each coarser level starts at twice the distance. 0 meshes
+     * all chunks at the full resolution.
+     */
+    public static float lodDistance = 64.0f;
+    /**
+     * Run the light engine on its own thread.
+     */
+    public static boolean backgroundLight = true;
+    /**
+     * The count of random block ticks per chunk per tick.
+     */
+    public static int randomTickSpeed = 3;
 }
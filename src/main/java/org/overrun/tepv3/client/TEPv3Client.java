@@ -33,8 +33,10 @@ import org.overrun.tepv3.client.gl.GLDepthFunc;
 import org.overrun.tepv3.client.gl.VertexBuilder;
 import org.overrun.tepv3.client.render.model.BlockModelManager;
 import org.overrun.tepv3.client.render.model.Mesh;
+import org.overrun.tepv3.client.render.BufferPool;
 import org.overrun.tepv3.client.render.Frustum;
 import org.overrun.tepv3.client.render.GameRenderer;
+import org.overrun.tepv3.client.render.QuadIndexBuffer;
 import org.overrun.tepv3.client.render.RenderSystem;
 import org.overrun.tepv3.client.res.DefaultResourcePack;
 import org.overrun.tepv3.client.tex.SpriteAtlasTextures;
@@ -106,9 +108,12 @@ public class TEPv3Client implements Runnable, AutoCloseable {
     public WorldRenderer worldRenderer;
     public PlayerEntity player;// todo player into world
     public Camera attachCamera;
+    private final Vector3d cameraPos = new Vector3d();
     public DefaultResourcePack defaultResourcePack;
     @Deprecated(since = "3.0.1", forRemoval = true)
     public Mesh crossHair;
+    private long debugTitleTime = System.currentTimeMillis();
+    private int debugTitleFrames;
 
     public TEPv3Client() {
         viewport = new Viewport.Mutable(INIT_WIDTH, INIT_HEIGHT);
@@ -256,9 +261,19 @@ public class TEPv3Client implements Runnable, AutoCloseable {
 
         gameRenderer = new GameRenderer(this);
         gameRenderer.preloadPrograms();
-        world = new World(System.nanoTime(), 256, 64, 256);
-        worldRenderer = new WorldRenderer(world);
+        world = new World(System.nanoTime(), 256, 64, 256, worldGenThreads, terrainSampling);
+        if (backgroundLight)
+            world.getLightEngine().start();
+        worldRenderer = new WorldRenderer(world,
+            chunkBuilderThreads,
+            greedyMeshing,
+            occlusionCulling,
+            chunkRebuildBudget,
+            lodDistance);
         player = new PlayerEntity(world);
+        world.loadChunksAround((int) floor(player.position.x),
+            (int) floor(player.position.z),
+            viewDistance);
         attachCamera = player.camera;
         var builder = new Mesh.Builder().enableQuad();
         builder.color(1, 1, 1, 0.5f).vertex(2, -8, 0).next();
@@ -280,7 +295,18 @@ public class TEPv3Client implements Runnable, AutoCloseable {
      * It will be called on ticking.
      */
     public void tick() {
-        player.tick();
+        updateLoadedChunks();
+        world.randomTick(randomTickSpeed);
+        world.applyLightUpdates();
+        // Hold the player until the column under them is generated
+        if (world.isColumnLoaded((int) floor(player.position.x) >> 4, (int) floor(player.position.z) >> 4))
+            player.tick();
+    }
+
+    private void updateLoadedChunks() {
+        world.updateLoadedChunks((int) floor(player.position.x),
+            (int) floor(player.position.z),
+            viewDistance);
     }
 
     private void moveCameraToPlayer(double delta) {
@@ -291,7 +317,7 @@ public class TEPv3Client implements Runnable, AutoCloseable {
             .rotateY((float) toRadians(player.rotation.y));
         var lPos = attachCamera.prevPos.lerp(attachCamera.position,
             delta,
-            new Vector3d());
+            cameraPos);
         mv.translate((float) -lPos.x,
             (float) -lPos.y,
             (float) -lPos.z);
@@ -319,13 +345,33 @@ public class TEPv3Client implements Runnable, AutoCloseable {
         setupCamera(delta);
         RenderSystem.enableCullFace();
         RenderSystem.setProgramColor(1, 1, 1, 1);
-        var frustum = Frustum.getFrustum();
+        worldRenderer.cull(Frustum.update());
         worldRenderer.updateDirtyChunks(player);
-        worldRenderer.render(0);
-        //todo setup fog and light
-        worldRenderer.render(1);
+        worldRenderer.render(cameraPos);
 
         drawGui();
+        updateDebugTitle();
+    }
+
+    /**
+     * Show the frame rate and the chunk rebuild stats in the title, once a
+     * second.
+     */
+    private void updateDebugTitle() {
+        ++debugTitleFrames;
+        long now = System.currentTimeMillis();
+        if (now - debugTitleTime < 1000L)
+            return;
+        var scheduler = worldRenderer.getRebuildScheduler();
+        setTitle(String.format("%s | %d fps | %d draw calls | backlog %d | latency %.1f ms | %d skipped",
+            INIT_TITLE,
+            debugTitleFrames * 1000L / (now - debugTitleTime),
+            worldRenderer.getDrawCalls(),
+            scheduler.getBacklog(),
+            scheduler.getAverageLatency(),
+            scheduler.getSkippedRebuilds()));
+        debugTitleTime = now;
+        debugTitleFrames = 0;
     }
 
     private void drawGui() {
@@ -354,6 +400,9 @@ public class TEPv3Client implements Runnable, AutoCloseable {
     public void onClosing() {
         gameRenderer.close();
         worldRenderer.free();
+        QuadIndexBuffer.free();
+        BufferPool.clear();
+        world.close();
     }
 
     public Window getWindow() {
@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.render;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * <h2>The buffer pool</h2>
+ * Off-heap buffers in power-of-two size classes, borrowed by the mesh
+ * builders and returned once the vertices are uploaded, so rebuilding the
+ * chunks reuses the same memory instead of allocating again. It is safe to
+ * use from any thread.
+ * <p>
+ * The buffers larger than the largest class are not pooled, and each class
+ * keeps at most {@value #MAX_POOLED_BYTES_PER_CLASS} bytes; the rest are
+ * freed on return.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class BufferPool {
+    /**
+     * The shift of the smallest class, 16 KiB.
+     */
+    public static final int MIN_CLASS_SHIFT = 14;
+    /**
+     * The shift of the largest class, 16 MiB.
+     */
+    public static final int MAX_CLASS_SHIFT = 24;
+    public static final int MAX_POOLED_BYTES_PER_CLASS = 8 << 20;
+    private static final int CLASS_COUNT = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+    private static final SizeClass[] CLASSES = new SizeClass[CLASS_COUNT];
+
+    static {
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            CLASSES[i] = new SizeClass();
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    private static int classShift(int size) {
+        return Math.max(MIN_CLASS_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+    }
+
+    /**
+     * Borrow a cleared buffer of at least the given size.
+     *
+     * @param size the min size in bytes
+     * @return the buffer; {@linkplain #release(ByteBuffer) release} it
+     * after use
+     */
+    public static ByteBuffer borrow(int size) {
+        int shift = classShift(size);
+        if (shift > MAX_CLASS_SHIFT)
+            return memAlloc(size);
+        var sizeClass = CLASSES[shift - MIN_CLASS_SHIFT];
+        var buffer = sizeClass.buffers.poll();
+        if (buffer == null)
+            return memAlloc(1 << shift);
+        sizeClass.count.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Move the written bytes of a buffer into a larger one, and release the
+     * old buffer.
+     *
+     * @param buffer the buffer, written up to its position
+     * @param size   the min size in bytes of the new buffer
+     * @return the new buffer, positioned after the copied bytes
+     */
+    public static ByteBuffer grow(ByteBuffer buffer, int size) {
+        var grown = borrow(size);
+        grown.put(buffer.flip());
+        release(buffer);
+        return grown;
+    }
+
+    /**
+     * Return a buffer to the pool, or free it if the pool of its size is
+     * full. The buffer must not be used after that.
+     *
+     * @param buffer the buffer from {@link #borrow(int)}
+     */
+    public static void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        int shift = classShift(capacity);
+        if (capacity == 1 << shift && shift <= MAX_CLASS_SHIFT) {
+            var sizeClass = CLASSES[shift - MIN_CLASS_SHIFT];
+            if (sizeClass.count.incrementAndGet() <= Math.max(MAX_POOLED_BYTES_PER_CLASS >> shift, 1)) {
+                sizeClass.buffers.offer(buffer);
+                return;
+            }
+            sizeClass.count.decrementAndGet();
+        }
+        memFree(buffer);
+    }
+
+    /**
+     * Get the bytes held by the pool.
+     *
+     * @return the bytes
+     */
+    public static long getPooledBytes() {
+        long bytes = 0;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            bytes += (long) CLASSES[i].count.get() << (i + MIN_CLASS_SHIFT);
+        }
+        return bytes;
+    }
+
+    /**
+     * Free the pooled buffers.
+     */
+    public static void clear() {
+        for (var sizeClass : CLASSES) {
+            ByteBuffer buffer;
+            while ((buffer = sizeClass.buffers.poll()) != null) {
+                sizeClass.count.decrementAndGet();
+                memFree(buffer);
+            }
+        }
+    }
+
+    /**
+     * The pooled buffers of a size class, and their count.
+     */
+    private static final class SizeClass {
+        final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        final AtomicInteger count = new AtomicInteger();
+    }
+}
@@ -26,24 +26,83 @@ package org.overrun.tepv3.client.render;
 
 import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Vector4f;
 import org.overrun.tepv3.client.phys.AABBox;
 
 /**
+ * The view frustum.
+ * <p>
+ * The planes are found once per frame by {@link #update()}; the boxes are
+ * tested against them as floats, and many boxes at once from a flat array by
+ * {@link #testAab(float[], int)}.
+ * </p>
+ *
  * @author squid233
  * @since 3.0.1
  */
 public class Frustum {
+    /**
+     * The box is out of the frustum.
+     */
+    public static final int OUTSIDE = 0;
+    /**
+     * The box crosses a plane of the frustum.
+     */
+    public static final int INTERSECT = 1;
+    /**
+     * The box is fully in the frustum.
+     */
+    public static final int INSIDE = 2;
+    private static final int PLANE_COUNT = 6;
     private static final Frustum frustum = new Frustum();
     private final Matrix4f clipMatrix = new Matrix4f();
     private final FrustumIntersection intersection = new FrustumIntersection();
+    private final Vector4f plane = new Vector4f();
+    /**
+     * The normalized planes, {@code a b c d} each.
+     */
+    private final float[] planes = new float[PLANE_COUNT * 4];
 
+    /**
+     * Get the frustum of the current frame.
+     *
+     * @return the frustum
+     * @see #update()
+     */
     public static Frustum getFrustum() {
-        frustum.calculateFrustum();
         return frustum;
     }
 
-    private void calculateFrustum() {
-        intersection.set(clipMatrix.set(RenderSystem.getProjection()).mul(RenderSystem.getModelView()));
+    /**
+     * Find the frustum of the current frame from the matrices of the
+     * {@link RenderSystem}. Call it once the camera is set up.
+     *
+     * @return the frustum
+     */
+    public static Frustum update() {
+        frustum.set(RenderSystem.getProjection(), RenderSystem.getModelView());
+        return frustum;
+    }
+
+    /**
+     * Set the planes from the matrices.
+     *
+     * @param projection the projection matrix
+     * @param modelView  the model-view matrix
+     * @return this
+     */
+    public Frustum set(Matrix4fc projection, Matrix4fc modelView) {
+        clipMatrix.set(projection).mul(modelView);
+        intersection.set(clipMatrix);
+        for (int i = 0; i < PLANE_COUNT; i++) {
+            clipMatrix.frustumPlane(i, plane);
+            planes[i * 4] = plane.x;
+            planes[i * 4 + 1] = plane.y;
+            planes[i * 4 + 2] = plane.z;
+            planes[i * 4 + 3] = plane.w;
+        }
+        return this;
     }
 
     public boolean testPoint(float x, float y, float z) {
@@ -66,4 +125,49 @@ public class Frustum {
             (float) box.max.y,
             (float) box.max.z);
     }
+
+    /**
+     * Test a box from a flat array, laid out as
+     * {@code minX minY minZ maxX maxY maxZ}.
+     *
+     * @param bounds the boxes
+     * @param offset the index of the box's min x
+     * @return {@code true} if the box is partly or fully in the frustum
+     */
+    public boolean testAab(float[] bounds, int offset) {
+        float minX = bounds[offset], minY = bounds[offset + 1], minZ = bounds[offset + 2];
+        float maxX = bounds[offset + 3], maxY = bounds[offset + 4], maxZ = bounds[offset + 5];
+        var p = planes;
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            float a = p[i], b = p[i + 1], c = p[i + 2];
+            // The corner farthest along the normal
+            if (a * (a < 0 ? minX : maxX) + b * (b < 0 ? minY : maxY) + c * (c < 0 ? minZ : maxZ) < -p[i + 3])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Classify a box from a flat array, laid out as by
+     * {@link #testAab(float[], int)}.
+     *
+     * @param bounds the boxes
+     * @param offset the index of the box's min x
+     * @return {@link #OUTSIDE}, {@link #INTERSECT} or {@link #INSIDE}
+     */
+    public int classifyAab(float[] bounds, int offset) {
+        float minX = bounds[offset], minY = bounds[offset + 1], minZ = bounds[offset + 2];
+        float maxX = bounds[offset + 3], maxY = bounds[offset + 4], maxZ = bounds[offset + 5];
+        var p = planes;
+        int result = INSIDE;
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            float a = p[i], b = p[i + 1], c = p[i + 2], d = -p[i + 3];
+            if (a * (a < 0 ? minX : maxX) + b * (b < 0 ? minY : maxY) + c * (c < 0 ? minZ : maxZ) < d)
+                return OUTSIDE;
+            // The nearest corner is behind the plane
+            if (a * (a < 0 ? maxX : minX) + b * (b < 0 ? maxY : minY) + c * (c < 0 ? maxZ : minZ) < d)
+                result = INTERSECT;
+        }
+        return result;
+    }
 }
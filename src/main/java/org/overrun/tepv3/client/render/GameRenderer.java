@@ -46,6 +46,10 @@ public class GameRenderer implements AutoCloseable {
     private static Program positionColorTexProgram;
     @Nullable
     private static Program positionTexProgram;
+    @Nullable
+    private static Program chunkProgram;
+    @Nullable
+    private static Program chunkTiledProgram;
 
     public GameRenderer(TEPv3Client client) {
         this.client = client;
@@ -59,6 +63,8 @@ public class GameRenderer implements AutoCloseable {
         positionColorProgram = loadProgram("position_color", VertexFormats.POSITION_COLOR);
         positionColorTexProgram = loadProgram("position_color_tex", VertexFormats.POSITION_COLOR_TEXTURE);
         positionTexProgram = loadProgram("position_tex", VertexFormats.POSITION_TEXTURE);
+        chunkProgram = loadProgram("chunk", VertexFormats.CHUNK);
+        chunkTiledProgram = loadProgram("chunk_tiled", VertexFormats.CHUNK_TILED);
     }
 
     private Program loadProgram(String name, VertexFormat format) {
@@ -109,4 +115,24 @@ public class GameRenderer implements AutoCloseable {
     public static Program getPositionTexProgram() {
         return positionTexProgram;
     }
+
+    /**
+     * The program of {@link VertexFormats#CHUNK}.
+     *
+     * @return the program
+     */
+    @Nullable
+    public static Program getChunkProgram() {
+        return chunkProgram;
+    }
+
+    /**
+     * The program of {@link VertexFormats#CHUNK_TILED}.
+     *
+     * @return the program
+     */
+    @Nullable
+    public static Program getChunkTiledProgram() {
+        return chunkTiledProgram;
+    }
 }
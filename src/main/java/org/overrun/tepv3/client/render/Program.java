@@ -68,6 +68,7 @@ public class Program implements IGLProgram, AutoCloseable {
     public final GLUniform projMat;
     public final GLUniform modelViewMat;
     public final GLUniform colorModulator;
+    public final GLUniform chunkOffset;
 
     public Program(String name, VertexFormat format) {
         this.name = name;
@@ -126,6 +127,7 @@ public class Program implements IGLProgram, AutoCloseable {
         projMat = getUniform("ProjMat");
         modelViewMat = getUniform("ModelViewMat");
         colorModulator = getUniform("ColorModulator");
+        chunkOffset = getUniform("ChunkOffset");
     }
 
     private static Shader loadShader(Shader.Type type, String name) throws IOException {
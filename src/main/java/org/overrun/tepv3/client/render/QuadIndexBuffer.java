@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.render;
+
+import org.overrun.tepv3.client.render.VertexFormat.IntType;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * <h2>The quad index buffer</h2>
+ * One element buffer shared by all the quad meshes, as the indices of the
+ * quads are the same everywhere: {@code 0 1 2 2 3 0} for each 4 vertices.
+ * It grows on demand, in place, so the vertex arrays which bound it before
+ * still see it. The indices are unsigned shorts until they can't address the
+ * vertices.
+ * <p>
+ * Use it on the GL thread only.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class QuadIndexBuffer {
+    private static final int MAX_SHORT_QUADS = 0x10000 / 4;
+    private static int buffer;
+    private static int capacity;
+    private static IntType type = IntType.SHORT;
+
+    private QuadIndexBuffer() {
+    }
+
+    /**
+     * Bind the buffer to {@code GL_ELEMENT_ARRAY_BUFFER}, growing it to hold
+     * at least the given quads.
+     *
+     * @param quadCount the count of quads to draw
+     */
+    public static void bind(int quadCount) {
+        if (buffer == 0)
+            buffer = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, buffer);
+        if (quadCount > capacity)
+            grow(quadCount);
+    }
+
+    private static void grow(int quadCount) {
+        int newCapacity = Math.max(quadCount, Math.max(capacity * 2, 1024));
+        if (newCapacity > MAX_SHORT_QUADS) {
+            if (quadCount <= MAX_SHORT_QUADS)
+                newCapacity = MAX_SHORT_QUADS;
+            else
+                type = IntType.INT;
+        }
+        ByteBuffer indices = memAlloc(newCapacity * 6 * type.size);
+        try {
+            for (int i = 0, vertex = 0; i < newCapacity; i++, vertex += 4) {
+                put(indices, vertex);
+                put(indices, vertex + 1);
+                put(indices, vertex + 2);
+                put(indices, vertex + 2);
+                put(indices, vertex + 3);
+                put(indices, vertex);
+            }
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices.flip(), GL_STATIC_DRAW);
+        } finally {
+            memFree(indices);
+        }
+        capacity = newCapacity;
+    }
+
+    private static void put(ByteBuffer indices, int index) {
+        if (type == IntType.SHORT)
+            indices.putShort((short) index);
+        else
+            indices.putInt(index);
+    }
+
+    /**
+     * Get the GL type of the indices. It can change when the buffer grows, so
+     * get it for each draw.
+     *
+     * @return the type, {@code GL_UNSIGNED_SHORT} or {@code GL_UNSIGNED_INT}
+     */
+    public static int getType() {
+        return type.count;
+    }
+
+    public static void free() {
+        if (buffer != 0) {
+            glDeleteBuffers(buffer);
+            buffer = 0;
+        }
+        capacity = 0;
+        type = IntType.SHORT;
+    }
+}
@@ -37,12 +37,28 @@ public class VertexFormatElement {
     private final Type type;
     private final int textureIndex;
     private final int length;
+    private final boolean normalized;
     /**
      * The total length of this element (in bytes).
      */
     private final int byteLength;
 
     public VertexFormatElement(int textureIndex, DataType dataType, Type type, int length) {
+        this(textureIndex, dataType, type, length, type == Type.NORMAL || type == Type.COLOR);
+    }
+
+    /**
+     * Create an element.
+     *
+     * @param textureIndex the texture index
+     * @param dataType     the data type
+     * @param type         the type
+     * @param length       the count of components
+     * @param normalized   map the integers to [0, 1] or [-1, 1] in the shader;
+     *                     unnormalized integer UVs and colours reach the
+     *                     shader as integers
+     */
+    public VertexFormatElement(int textureIndex, DataType dataType, Type type, int length, boolean normalized) {
         if (!isValidType(textureIndex, type)) {
             throw new IllegalStateException("Multiple vertex elements of the same type other than UVs are not supported");
         }
@@ -50,6 +66,7 @@ public class VertexFormatElement {
         this.dataType = dataType;
         this.textureIndex = textureIndex;
         this.length = length;
+        this.normalized = normalized;
         this.byteLength = dataType.getByteLength() * length;
     }
 
@@ -77,12 +94,16 @@ public class VertexFormatElement {
         return byteLength;
     }
 
+    public final boolean isNormalized() {
+        return normalized;
+    }
+
     public final boolean isPosition() {
         return type == Type.POSITION;
     }
 
     public void startDrawing(int elementIndex, long pointer, int stride) {
-        this.type.startDrawing(length, dataType.getId(), stride, pointer, textureIndex, elementIndex);
+        this.type.startDrawing(length, dataType.getId(), normalized, stride, pointer, textureIndex, elementIndex);
     }
 
     public void endDrawing(int elementIndex) {
@@ -94,56 +115,59 @@ public class VertexFormatElement {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         var that = (VertexFormatElement) o;
-        return length == that.length && textureIndex == that.textureIndex && dataType == that.dataType && type == that.type;
+        return length == that.length && textureIndex == that.textureIndex && normalized == that.normalized && dataType == that.dataType && type == that.type;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(dataType, type, textureIndex, length);
+        return Objects.hash(dataType, type, textureIndex, length, normalized);
     }
 
     @Override
     public String toString() {
-        return length + "," + type.getName() + "," + dataType.getName();
+        return length + "," + type.getName() + "," + dataType.getName() + (normalized ? ",Normalized" : "");
     }
 
     public enum Type {
         POSITION("position",
-            (size, type, stride, pointer, textureIndex, elementIndex) -> {
+            (size, type, normalized, stride, pointer, textureIndex, elementIndex) -> {
                 glEnableVertexAttribArray(elementIndex);
-                glVertexAttribPointer(elementIndex, size, type, false, stride, pointer);
+                glVertexAttribPointer(elementIndex, size, type, normalized, stride, pointer);
             },
             (textureIndex, elementIndex) -> glDisableVertexAttribArray(elementIndex)),
         NORMAL("Normal",
-            (size, type, stride, pointer, textureIndex, elementIndex) -> {
+            (size, type, normalized, stride, pointer, textureIndex, elementIndex) -> {
                 glEnableVertexAttribArray(elementIndex);
-                glVertexAttribPointer(elementIndex, size, type, true, stride, pointer);
+                glVertexAttribPointer(elementIndex, size, type, normalized, stride, pointer);
             },
             (textureIndex, elementIndex) -> glDisableVertexAttribArray(elementIndex)),
         COLOR("Vertex Color",
-            (size, type, stride, pointer, textureIndex, elementIndex) -> {
+            (size, type, normalized, stride, pointer, textureIndex, elementIndex) -> {
                 glEnableVertexAttribArray(elementIndex);
-                glVertexAttribPointer(elementIndex, size, type, true, stride, pointer);
+                if (type == GL_FLOAT || normalized)
+                    glVertexAttribPointer(elementIndex, size, type, normalized, stride, pointer);
+                else
+                    glVertexAttribIPointer(elementIndex, size, type, stride, pointer);
             },
             (textureIndex, elementIndex) -> glDisableVertexAttribArray(elementIndex)),
         UV("UV",
-            (size, type, stride, pointer, textureIndex, elementIndex) -> {
+            (size, type, normalized, stride, pointer, textureIndex, elementIndex) -> {
                 glEnableVertexAttribArray(elementIndex);
-                if (type == GL_FLOAT)
-                    glVertexAttribPointer(elementIndex, size, type, false, stride, pointer);
+                if (type == GL_FLOAT || normalized)
+                    glVertexAttribPointer(elementIndex, size, type, normalized, stride, pointer);
                 else
                     glVertexAttribIPointer(elementIndex, size, type, stride, pointer);
             },
             (textureIndex, elementIndex) -> glDisableVertexAttribArray(elementIndex)),
         PADDING("Padding",
-            (size, type, stride, pointer, textureIndex, elementIndex) -> {
+            (size, type, normalized, stride, pointer, textureIndex, elementIndex) -> {
             },
             (textureIndex, elementIndex) -> {
             }),
         GENERIC("Generic",
-            (size, type, stride, pointer, textureIndex, elementIndex) -> {
+            (size, type, normalized, stride, pointer, textureIndex, elementIndex) -> {
                 glEnableVertexAttribArray(elementIndex);
-                glVertexAttribPointer(elementIndex, size, type, false, stride, pointer);
+                glVertexAttribPointer(elementIndex, size, type, normalized, stride, pointer);
             },
             (textureIndex, elementIndex) -> glDisableVertexAttribArray(elementIndex));
 
@@ -157,8 +181,8 @@ public class VertexFormatElement {
             this.finisher = finisher;
         }
 
-        public void startDrawing(int size, int type, int stride, long pointer, int textureIndex, int elementIndex) {
-            starter.setupBufferState(size, type, stride, pointer, textureIndex, elementIndex);
+        public void startDrawing(int size, int type, boolean normalized, int stride, long pointer, int textureIndex, int elementIndex) {
+            starter.setupBufferState(size, type, normalized, stride, pointer, textureIndex, elementIndex);
         }
 
         public void endDrawing(int textureIndex, int elementIndex) {
@@ -171,7 +195,7 @@ public class VertexFormatElement {
 
         @FunctionalInterface
         interface Starter {
-            void setupBufferState(int size, int type, int stride, long pointer, int textureIndex, int elementIndex);
+            void setupBufferState(int size, int type, boolean normalized, int stride, long pointer, int textureIndex, int elementIndex);
         }
 
         @FunctionalInterface
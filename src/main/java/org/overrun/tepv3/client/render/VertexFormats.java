@@ -41,6 +41,41 @@ public class VertexFormats {
     public static final VertexFormatElement LIGHT_ELEMENT = new VertexFormatElement(2, SHORT, UV, 2);
     public static final VertexFormatElement NORMAL_ELEMENT = new VertexFormatElement(0, BYTE, NORMAL, 3);
     public static final VertexFormatElement PADDING_ELEMENT = new VertexFormatElement(0, BYTE, PADDING, 1);
+    /**
+     * The position relative to the centre of the chunk draw group, in fixed
+     * point of 1/{@link #PACKED_POSITION_SCALE} block.
+     */
+    public static final VertexFormatElement PACKED_POSITION_ELEMENT = new VertexFormatElement(0, SHORT, VertexFormatElement.Type.POSITION, 3);
+    /**
+     * The colour as RGB565, without alpha; it reaches the shader as an
+     * integer.
+     */
+    public static final VertexFormatElement PACKED_COLOR_ELEMENT = new VertexFormatElement(0, USHORT, COLOR, 1, false);
+    /**
+     * The tex coord in the atlas, normalized.
+     */
+    public static final VertexFormatElement PACKED_TEXTURE_0_ELEMENT = new VertexFormatElement(0, USHORT, UV, 2, true);
+    /**
+     * The tex coord counted in sprites, in fixed point of
+     * 1/{@link #PACKED_TILE_SCALE} sprite.
+     */
+    public static final VertexFormatElement PACKED_TILE_ELEMENT = new VertexFormatElement(0, SHORT, UV, 2);
+    /**
+     * The sprite the tile coord repeats in, normalized: min u, min v, width,
+     * height.
+     */
+    public static final VertexFormatElement PACKED_SPRITE_ELEMENT = new VertexFormatElement(1, USHORT, UV, 4, true);
+    /**
+     * The scale of {@link #PACKED_POSITION_ELEMENT}; a packed position
+     * reaches 128 blocks around the centre, twice the half size of a draw
+     * group.
+     */
+    public static final float PACKED_POSITION_SCALE = 256.0f;
+    /**
+     * The scale of {@link #PACKED_TILE_ELEMENT}; a packed tile coord reaches
+     * 32 sprites either way.
+     */
+    public static final float PACKED_TILE_SCALE = 1024.0f;
     public static final VertexFormatElement TEXTURE_ELEMENT = TEXTURE_0_ELEMENT;
     public static final VertexFormat BLIT_SCREEN = new VertexFormat(MapBuilder.create("Position", POSITION_ELEMENT).of("UV", TEXTURE_ELEMENT).of("Color", COLOR_ELEMENT).build());
     public static final VertexFormat POSITION_COLOR_TEXTURE_LIGHT_NORMAL = new VertexFormat(MapBuilder.create("Position", POSITION_ELEMENT).of("Color", COLOR_ELEMENT).of("UV0", TEXTURE_0_ELEMENT).of("UV2", LIGHT_ELEMENT).of("Normal", NORMAL_ELEMENT).of("Padding", PADDING_ELEMENT).build());
@@ -55,5 +90,14 @@ public class VertexFormats {
     public static final VertexFormat POSITION_TEXTURE_COLOR = new VertexFormat(MapBuilder.create("Position", POSITION_ELEMENT).of("UV0", TEXTURE_0_ELEMENT).of("Color", COLOR_ELEMENT).build());
     public static final VertexFormat POSITION_COLOR_TEXTURE_LIGHT = new VertexFormat(MapBuilder.create("Position", POSITION_ELEMENT).of("Color", COLOR_ELEMENT).of("UV0", TEXTURE_0_ELEMENT).of("UV2", LIGHT_ELEMENT).build());
     public static final VertexFormat POSITION_TEXTURE_LIGHT_COLOR = new VertexFormat(MapBuilder.create("Position", POSITION_ELEMENT).of("UV0", TEXTURE_0_ELEMENT).of("UV2", LIGHT_ELEMENT).of("Color", COLOR_ELEMENT).build());
+    /**
+     * The chunk vertices: 12 bytes each, drawn with the centre of the draw
+     * group in the {@code ChunkOffset} uniform.
+     */
+    public static final VertexFormat CHUNK = new VertexFormat(MapBuilder.create("Position", PACKED_POSITION_ELEMENT).of("Color", PACKED_COLOR_ELEMENT).of("UV0", PACKED_TEXTURE_0_ELEMENT).build());
+    /**
+     * The chunk vertices with tiling sprites: 20 bytes each.
+     */
+    public static final VertexFormat CHUNK_TILED = new VertexFormat(MapBuilder.create("Position", PACKED_POSITION_ELEMENT).of("Color", PACKED_COLOR_ELEMENT).of("UV0", PACKED_TILE_ELEMENT).of("UV1", PACKED_SPRITE_ELEMENT).build());
     public static final VertexFormat POSITION_TEXTURE_COLOR_NORMAL = new VertexFormat(MapBuilder.create("Position", POSITION_ELEMENT).of("UV0", TEXTURE_0_ELEMENT).of("Color", COLOR_ELEMENT).of("Normal", NORMAL_ELEMENT).of("Padding", PADDING_ELEMENT).build());
 }
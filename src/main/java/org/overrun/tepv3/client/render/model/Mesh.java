@@ -24,11 +24,14 @@
 
 package org.overrun.tepv3.client.render.model;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
+import org.jetbrains.annotations.Nullable;
+import org.overrun.tepv3.Configs;
 import org.overrun.tepv3.client.gl.IVertexBuilder;
+import org.overrun.tepv3.client.render.BufferPool;
+import org.overrun.tepv3.client.render.QuadIndexBuffer;
 import org.overrun.tepv3.client.render.RenderSystem;
 import org.overrun.tepv3.client.render.VertexFormat;
+import org.overrun.tepv3.client.render.VertexFormat.DrawMode;
 import org.overrun.tepv3.client.render.VertexFormatElement;
 import org.overrun.tepv3.client.render.VertexFormatElement.Type;
 import org.overrun.tepv3.client.render.VertexFormats;
@@ -37,7 +40,6 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import static org.lwjgl.opengl.GL30.*;
-import static org.lwjgl.system.MemoryUtil.*;
 import static org.overrun.tepv3.client.gl.GLColor.toUbyte;
 
 /**
@@ -45,22 +47,22 @@ import static org.overrun.tepv3.client.gl.GLColor.toUbyte;
  * @since 3.0.1
  */
 public class Mesh implements IMesh {
-    private final ByteBuffer rawData;
-    private final int[] elementIndices;
+    private ByteBuffer rawData;
     private final VertexFormat format;
     private final int vertexCount;
+    private final boolean quad;
     private boolean built;
-    private int vao, vbo, ebo;
+    private int vao, vbo;
 
     public static class Builder implements IVertexBuilder {
-        private int dataSz = 0x30000;
-        private ByteBuffer data = memAlloc(dataSz);
-        private IntList indices;
+        private ByteBuffer data = BufferPool.borrow(1 << BufferPool.MIN_CLASS_SHIFT);
         private boolean quad;
-        private boolean hasColor, hasTexture;
+        private boolean packed;
+        private float originX, originY, originZ;
+        private boolean hasColor, hasTexture, hasSprite;
         private float x, y, z, r, g, b, a, u, v;
+        private float spriteU, spriteV, spriteWidth, spriteHeight;
         private int vertexCount;
-        private int vertexIndex;
 
         /**
          * Enable quad building.
@@ -77,6 +79,25 @@ public class Mesh implements IMesh {
             return this;
         }
 
+        /**
+         * Pack the vertices relative to an origin, into
+         * {@link VertexFormats#CHUNK}, or {@link VertexFormats#CHUNK_TILED}
+         * with a {@link #sprite sprite}. The colour is always written, as
+         * RGB565; the alpha is dropped.
+         *
+         * @param originX the origin x
+         * @param originY the origin y
+         * @param originZ the origin z
+         * @return this
+         */
+        public Builder packed(float originX, float originY, float originZ) {
+            packed = true;
+            this.originX = originX;
+            this.originY = originY;
+            this.originZ = originZ;
+            return this;
+        }
+
         @Override
         public Builder vertex(float x, float y, float z) {
             this.x = x;
@@ -108,6 +129,29 @@ public class Mesh implements IMesh {
             return this;
         }
 
+        /**
+         * Set the sprite the tex coords repeat in. With a sprite, the tex
+         * coords are in sprite units and wrap around it, so a quad can tile a
+         * sprite of an atlas. Only {@link #packed packed} vertices take a
+         * sprite.
+         *
+         * @param u0 the min u of the sprite
+         * @param v0 the min v of the sprite
+         * @param u1 the max u of the sprite
+         * @param v1 the max v of the sprite
+         * @return this
+         */
+        public Builder sprite(float u0, float v0, float u1, float v1) {
+            if (!packed)
+                throw new IllegalStateException("Sprites need packed vertices");
+            hasSprite = true;
+            spriteU = u0;
+            spriteV = v0;
+            spriteWidth = u1 - u0;
+            spriteHeight = v1 - v0;
+            return this;
+        }
+
         @Override
         public void array(VertexFormat format, float[] rawData) {
             for (int i = 0; i < rawData.length; ) {
@@ -143,48 +187,92 @@ public class Mesh implements IMesh {
                          float a,
                          float u,
                          float v) {
-            if (data.capacity() - data.position() < 32) {
-                dataSz += 0x30000;
-                data = memRealloc(data, dataSz);
-            }
-            data.putFloat(x)
-                .putFloat(y)
-                .putFloat(z);
-            if (hasColor) {
-                data.put((byte) toUbyte(r))
-                    .put((byte) toUbyte(g))
-                    .put((byte) toUbyte(b))
-                    .put((byte) toUbyte(a));
+            if (data.remaining() < 64) {
+                data = BufferPool.grow(data, data.capacity() * 2);
             }
-            if (hasTexture) {
-                data.putFloat(u)
-                    .putFloat(v);
+            if (packed) {
+                putPacked(x, y, z, r, g, b, a, u, v);
+            } else {
+                data.putFloat(x)
+                    .putFloat(y)
+                    .putFloat(z);
+                if (hasColor) {
+                    data.put((byte) toUbyte(r))
+                        .put((byte) toUbyte(g))
+                        .put((byte) toUbyte(b))
+                        .put((byte) toUbyte(a));
+                }
+                if (hasTexture) {
+                    data.putFloat(u)
+                        .putFloat(v);
+                }
             }
             ++vertexCount;
-            if (quad) {
-                if (indices == null)
-                    indices = new IntArrayList();
-                ++vertexIndex;
+        }
 
-                if (vertexIndex == 4) {
-                    vertexIndex = 0;
-                    vertexCount += 2;
-                    indices.add(vertexCount - 6);
-                    indices.add(vertexCount - 5);
-                    indices.add(vertexCount - 4);
-                    indices.add(vertexCount - 4);
-                    indices.add(vertexCount - 3);
-                    indices.add(vertexCount - 6);
-                }
+        private void putPacked(float x,
+                               float y,
+                               float z,
+                               float r,
+                               float g,
+                               float b,
+                               float a,
+                               float u,
+                               float v) {
+            data.putShort(toFixed(x - originX, VertexFormats.PACKED_POSITION_SCALE))
+                .putShort(toFixed(y - originY, VertexFormats.PACKED_POSITION_SCALE))
+                .putShort(toFixed(z - originZ, VertexFormats.PACKED_POSITION_SCALE))
+                .putShort(toRgb565(r, g, b));
+            if (hasSprite) {
+                data.putShort(toFixed(u, VertexFormats.PACKED_TILE_SCALE))
+                    .putShort(toFixed(v, VertexFormats.PACKED_TILE_SCALE))
+                    .putShort(toUshort(spriteU))
+                    .putShort(toUshort(spriteV))
+                    .putShort(toUshort(spriteWidth))
+                    .putShort(toUshort(spriteHeight));
+            } else {
+                data.putShort(toUshort(u))
+                    .putShort(toUshort(v));
             }
         }
 
+        private static short toFixed(float value, float scale) {
+            return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value * scale)));
+        }
+
+        private static short toRgb565(float r, float g, float b) {
+            return (short) (toBits(r, 31) << 11 | toBits(g, 63) << 5 | toBits(b, 31));
+        }
+
+        private static int toBits(float value, int max) {
+            return Math.round(Math.max(0.0f, Math.min(1.0f, value)) * max);
+        }
+
+        private static short toUshort(float value) {
+            return (short) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 0xffff);
+        }
+
         @Override
         public void next() {
             next(x, y, z, r, g, b, a, u, v);
         }
 
+        /**
+         * Get the count of vertices built so far.
+         *
+         * @return the count
+         */
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
         public Mesh build() {
+            if (packed) {
+                return new Mesh(data.flip(),
+                    hasSprite ? VertexFormats.CHUNK_TILED : VertexFormats.CHUNK,
+                    vertexCount,
+                    quad);
+            }
             var fmtList = new ArrayList<VertexFormatElement>();
             fmtList.add(VertexFormats.POSITION_ELEMENT);
             if (hasColor)
@@ -193,20 +281,29 @@ public class Mesh implements IMesh {
                 fmtList.add(VertexFormats.TEXTURE_0_ELEMENT);
             var fmt = VertexFormat.fromElements(fmtList);
             return new Mesh(data.flip(),
-                indices != null ? indices.toIntArray() : null,
                 fmt,
-                vertexCount);
+                vertexCount,
+                quad);
         }
     }
 
+    /**
+     * Create a mesh.
+     *
+     * @param rawData     the vertices, from the {@link BufferPool}
+     * @param format      the vertex format
+     * @param vertexCount the count of vertices
+     * @param quad        draw each 4 vertices as a quad, by the
+     *                    {@link QuadIndexBuffer}; otherwise as triangles
+     */
     public Mesh(ByteBuffer rawData,
-                int[] elementIndices,
                 VertexFormat format,
-                int vertexCount) {
+                int vertexCount,
+                boolean quad) {
         this.rawData = rawData;
-        this.elementIndices = elementIndices;
         this.format = format;
         this.vertexCount = vertexCount;
+        this.quad = quad;
     }
 
     @Override
@@ -222,55 +319,76 @@ public class Mesh implements IMesh {
             shader.colorModulator.set(RenderSystem.getProgramColor());
         }
         shader.bind();
+        upload();
+        glBindVertexArray(vao);
+        if (quad)
+            glDrawElements(GL_TRIANGLES, DrawMode.QUADS.getSize(vertexCount), QuadIndexBuffer.getType(), 0);
+        else
+            glDrawArrays(GL_TRIANGLES, 0, vertexCount);
+        glBindVertexArray(0);
+        shader.unbind();
+    }
+
+    /**
+     * Upload the vertices to GL if they aren't yet. It is done by the first
+     * {@link #render()} otherwise. The vertices are returned to the
+     * {@link BufferPool} then, unless {@link Configs#keepMeshData} is set.
+     */
+    public void upload() {
+        if (built)
+            return;
+        built = true;
         if (vao == 0)
             vao = glGenVertexArrays();
         glBindVertexArray(vao);
         if (vbo == 0)
             vbo = glGenBuffers();
-        if (!built) {
-            built = true;
-            glBindBuffer(GL_ARRAY_BUFFER, vbo);
-            glBufferData(GL_ARRAY_BUFFER, rawData, GL_STATIC_DRAW);
-            if (elementIndices != null) {
-                if (ebo == 0)
-                    ebo = glGenBuffers();
-                glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
-                glBufferData(GL_ELEMENT_ARRAY_BUFFER, elementIndices, GL_STATIC_DRAW);
-            }
-            format.startDrawing();
-            glBindBuffer(GL_ARRAY_BUFFER, 0);
-        }
-        if (elementIndices != null)
-            glDrawElements(GL_TRIANGLES, vertexCount, GL_UNSIGNED_INT, 0);
-        else
-            glDrawArrays(GL_TRIANGLES, 0, vertexCount);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ARRAY_BUFFER, rawData, GL_STATIC_DRAW);
+        if (quad)
+            QuadIndexBuffer.bind(vertexCount / 4);
+        format.startDrawing();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
         glBindVertexArray(0);
-        shader.unbind();
+        if (!Configs.keepMeshData) {
+            BufferPool.release(rawData);
+            rawData = null;
+        }
     }
 
+    /**
+     * Get the vertices.
+     *
+     * @return the vertices, or {@code null} if they were dropped after
+     * {@linkplain #upload() uploading}
+     */
+    @Nullable
     @Override
     public ByteBuffer getRawData() {
         return rawData;
     }
 
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
     @Override
     public VertexFormat getFormat() {
         return format;
     }
 
     public void free() {
-        memFree(rawData);
-        if (glIsVertexArray(vao)) {
+        if (rawData != null) {
+            BufferPool.release(rawData);
+            rawData = null;
+        }
+        if (vao != 0 && glIsVertexArray(vao)) {
             glDeleteVertexArrays(vao);
             vao = 0;
         }
-        if (glIsBuffer(vbo)) {
+        if (vbo != 0 && glIsBuffer(vbo)) {
             glDeleteBuffers(vbo);
             vbo = 0;
         }
-        if (glIsBuffer(ebo)) {
-            glDeleteBuffers(ebo);
-            ebo = 0;
-        }
     }
 }
@@ -54,10 +54,19 @@ public class SpriteAtlasTextures {
         return ATLASES.get(id);
     }
 
+    /**
+     * Register an atlas, e.g. one laid out without a GL context.
+     *
+     * @param atlas the atlas
+     */
+    public static void putAtlas(SpriteAtlas atlas) {
+        ATLASES.put(atlas.id(), atlas);
+    }
+
     public static void generateAtlases() {
         var blockAtlas = generateBlockAtlas();
         DefaultResourcePack.putResource(BLOCK_ATLAS, blockAtlas);
-        ATLASES.put(BLOCK_ATLAS, blockAtlas);
+        putAtlas(blockAtlas);
     }
 
     private static SpriteAtlas generateBlockAtlas() {
@@ -0,0 +1,184 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world;
+
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+import org.overrun.tepv3.client.render.model.Mesh;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h2>The chunk builder</h2>
+ * Meshes chunks on a worker pool. The blocks are copied into a
+ * {@link ChunkRenderRegion} on the main thread, the meshes are built from the
+ * copy on a worker, and the finished meshes are uploaded on the GL thread
+ * by {@link #upload}. A chunk keeps rendering its old meshes until then.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class ChunkBuilder implements AutoCloseable {
+    /**
+     * The count of builds in a row a chunk may fail before it is no longer
+     * retried; it is tried again once it is dirtied by a change.
+     */
+    public static final int MAX_FAILED_BUILDS = 3;
+    private final ForkJoinPool pool;
+    private final LinkedBlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+    private final boolean greedy;
+    private int pending;
+
+    /**
+     * Create a chunk builder.
+     *
+     * @param parallelism the count of workers
+     * @param greedy      merge the faces by {@link GreedyMesher}
+     */
+    public ChunkBuilder(int parallelism, boolean greedy) {
+        pool = new ForkJoinPool(Math.max(parallelism, 1));
+        this.greedy = greedy;
+    }
+
+    /**
+     * Snapshot a dirty chunk and start meshing it. The chunk is clean from now;
+     * if it is dirtied again before the meshes are uploaded, it is rebuilt
+     * once more afterwards.
+     *
+     * @param chunk the chunk, not {@linkplain ClientChunk#isBuilding() building}
+     */
+    public void schedule(ClientChunk chunk) {
+        long dirtiedTime = chunk.dirtiedTime;
+        var region = chunk.snapshot();
+        ++pending;
+        pool.execute(() -> {
+            Mesh mesh;
+            var owners = new ShortArrayList();
+            long visibility = ChunkVisibility.ALL;
+            Throwable error = null;
+            long before = System.nanoTime();
+            try {
+                mesh = chunk.build(region, greedy, owners);
+                visibility = ChunkVisibility.compute(region);
+            } catch (Throwable t) {
+                error = t;
+                mesh = null;
+            }
+            completed.add(new Result(chunk, mesh, owners, visibility, System.nanoTime() - before, dirtiedTime, error));
+        });
+    }
+
+    /**
+     * Upload the finished meshes until a deadline; the rest wait for the next
+     * call. At least one is uploaded if any is finished. Call it on the GL
+     * thread.
+     *
+     * @param dirtyQueue the queue the failed chunks go back to, until they
+     *                   fail {@value #MAX_FAILED_BUILDS} times in a row
+     * @param deadline   the {@link System#nanoTime()} to stop at
+     * @param listener   called for each uploaded chunk
+     * @return the count of uploaded chunks
+     */
+    public int upload(DirtyChunkQueue dirtyQueue, long deadline, UploadListener listener) {
+        int count = 0;
+        Result result;
+        while ((count == 0 || System.nanoTime() < deadline) && (result = completed.poll()) != null) {
+            --pending;
+            var chunk = result.chunk;
+            if (result.mesh == null) {
+                chunk.finishBuilding(null, null, ChunkVisibility.ALL, 0L);
+                // Report the first failure in a row only
+                if (chunk.failedBuilds++ == 0) {
+                    System.err.println("Failed to build the chunk at " + chunk.x0 + ", " + chunk.y0 + ", " + chunk.z0);//todo use logger
+                    result.error.printStackTrace();
+                }
+                // Try again later, or keep the old meshes until the next change
+                if (chunk.failedBuilds < MAX_FAILED_BUILDS) {
+                    chunk.markDirty();
+                    dirtyQueue.add(chunk);
+                }
+                continue;
+            }
+            chunk.failedBuilds = 0;
+            chunk.finishBuilding(result.mesh, result.owners, result.visibility, result.time);
+            listener.uploaded(chunk, result.time, System.currentTimeMillis() - result.dirtiedTime);
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Get the count of chunks being meshed or waiting for upload.
+     *
+     * @return the count
+     */
+    public int getPendingCount() {
+        return pending;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public boolean isGreedy() {
+        return greedy;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Result result;
+        while ((result = completed.poll()) != null) {
+            if (result.mesh != null)
+                result.mesh.free();
+        }
+    }
+
+    /**
+     * The listener of the uploaded chunks.
+     */
+    @FunctionalInterface
+    public interface UploadListener {
+        /**
+         * Called when a chunk is uploaded.
+         *
+         * @param chunk     the chunk
+         * @param buildTime the meshing time in nanoseconds
+         * @param latency   the time from being dirtied to being uploaded in
+         *                  milliseconds
+         */
+        void uploaded(ClientChunk chunk, long buildTime, long latency);
+    }
+
+    private record Result(ClientChunk chunk, Mesh mesh, ShortArrayList owners, long visibility, long time,
+                          long dirtiedTime, Throwable error) {
+    }
+}
@@ -0,0 +1,384 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world;
+
+import org.overrun.tepv3.client.gl.IVertexBuilder;
+import org.overrun.tepv3.client.render.VertexFormat;
+import org.overrun.tepv3.client.render.VertexFormatElement.Type;
+import org.overrun.tepv3.util.Direction;
+import org.overrun.tepv3.world.IBlockView;
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.block.Blocks;
+
+import java.util.Arrays;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The chunk level of detail</h2>
+ * The far chunks are meshed at a lower resolution: at level {@code n}, each
+ * cell of 2<sup>n</sup> &times; 2<sup>n</sup> &times; 2<sup>n</sup> blocks is
+ * drawn as one block. A cell is solid if at least half of its blocks are, and
+ * shows the most common block of its topmost layer with a solid block, so
+ * the grass stays on top of the hills.
+ * <p>
+ * A mesh of a level above 0 is closed: it keeps the faces on the chunk
+ * borders, except towards a chunk full of solid blocks. A full-resolution
+ * chunk keeps its border faces towards a chunk of another level the same way
+ * (see {@link ChunkRenderRegion#openSides}). The meshes of two chunks of
+ * different levels then never leave a gap between them, whatever the cells
+ * on each side are.
+ * </p>
+ * <p>
+ * With greedy meshing, the {@link GreedyMesher} merges the cell faces and
+ * tiles the sprite once per block over them. Without, the packed format has
+ * no sprite, so each cell face stretches its sprite.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ChunkLod {
+    /**
+     * The coarsest level, with cells of 8 blocks.
+     */
+    public static final int MAX_LEVEL = 3;
+    /**
+     * The distance in blocks a chunk must pass the distance of a level by
+     * before it changes level, so a chunk on the edge doesn't switch back and
+     * forth as the player moves.
+     */
+    public static final double HYSTERESIS = 8.0;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private ChunkLod() {
+    }
+
+    /**
+     * Get the distance from which a level is used.
+     *
+     * @param level       the level, from 1
+     * @param lodDistance the distance of level 1 in blocks
+     * @return the distance in blocks; each level doubles it
+     */
+    public static double getDistance(int level, float lodDistance) {
+        return lodDistance * (double) (1 << (level - 1));
+    }
+
+    /**
+     * Choose the level of a chunk by its distance to the viewer. It only
+     * changes once the chunk is {@link #HYSTERESIS} past the distance of a
+     * level.
+     *
+     * @param current     the current level
+     * @param distanceSqr the squared distance to the viewer
+     * @param lodDistance the distance of level 1 in blocks, or 0 to always
+     *                    use the full resolution
+     * @return the new level
+     */
+    public static int getLevel(int current, double distanceSqr, float lodDistance) {
+        if (lodDistance <= 0)
+            return 0;
+        int level = current;
+        while (level < MAX_LEVEL && distanceSqr >= square(getDistance(level + 1, lodDistance) + HYSTERESIS))
+            ++level;
+        while (level > 0 && distanceSqr < square(getDistance(level, lodDistance) - HYSTERESIS))
+            --level;
+        return level;
+    }
+
+    private static double square(double d) {
+        return d * d;
+    }
+
+    /**
+     * Build the mesh of a chunk at a level.
+     *
+     * @param region the copy of the chunk, with the sides to keep the border
+     *               faces towards {@linkplain ChunkRenderRegion#openSides opened}
+     * @param level  the level, from 1
+     * @param x0     the min block x of the chunk
+     * @param y0     the min block y of the chunk
+     * @param z0     the min block z of the chunk
+     * @param target the builder of the quads
+     */
+    public static void build(ChunkRenderRegion region, int level, int x0, int y0, int z0, IVertexBuilder target) {
+        var cells = new Cells(region, level, x0, y0, z0);
+        var builder = new ScaledBuilder(target, cells.scale, x0, y0, z0);
+        int size = cells.size;
+        for (int y = 0; y < size; y++) {
+            for (int z = 0; z < size; z++) {
+                for (int x = 0; x < size; x++) {
+                    var block = cells.get(x, y, z);
+                    if (block == null)
+                        continue;
+                    int faces = 0;
+                    for (var dir : DIRECTIONS) {
+                        if (cells.isFaceVisible(x, y, z, dir))
+                            faces |= 1 << dir.getId();
+                    }
+                    if (faces != 0)
+                        block.render(builder, cells, faces, x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * The cells of a chunk, seen by the block rendering as blocks at the
+     * cell coordinates. A cell outside the chunk is the border layer of the
+     * region next to it.
+     */
+    private static final class Cells implements IBlockView {
+        private final ChunkRenderRegion region;
+        private final int x0, y0, z0;
+        private final int scale, size;
+        /**
+         * The block of each cell; {@code null} if it is not solid.
+         */
+        private final Block[] blocks;
+        /**
+         * The max sky light in the high nibble and the max block light in the
+         * low nibble of each cell and the cells around; -1 until read.
+         */
+        private final int[] light;
+        private final int lightSize;
+
+        Cells(ChunkRenderRegion region, int level, int x0, int y0, int z0) {
+            this.region = region;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.z0 = z0;
+            scale = 1 << level;
+            size = CHUNK_SIZE / scale;
+            blocks = new Block[size * size * size];
+            lightSize = size + 2;
+            light = new int[lightSize * lightSize * lightSize];
+            Arrays.fill(light, -1);
+            for (int y = 0; y < size; y++) {
+                for (int z = 0; z < size; z++) {
+                    for (int x = 0; x < size; x++) {
+                        blocks[(y * size + z) * size + x] = pick(x, y, z);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Pick the block of a cell.
+         */
+        private Block pick(int cx, int cy, int cz) {
+            int rowMask = ((1 << scale) - 1) << cx * scale;
+            int solid = 0;
+            int topLayer = -1;
+            for (int y = cy * scale; y < (cy + 1) * scale; y++) {
+                for (int z = cz * scale; z < (cz + 1) * scale; z++) {
+                    int count = Integer.bitCount(region.getSolidRow(y, z) & rowMask);
+                    solid += count;
+                    if (count > 0)
+                        topLayer = y;
+                }
+            }
+            if (solid * 2 < scale * scale * scale)
+                return null;
+            // The most common solid block of the topmost layer
+            var found = new Block[scale * scale];
+            var counts = new int[scale * scale];
+            int distinct = 0;
+            Block best = null;
+            int bestCount = 0;
+            for (int z = cz * scale; z < (cz + 1) * scale; z++) {
+                int row = region.getSolidRow(topLayer, z) & rowMask;
+                while (row != 0) {
+                    int x = Integer.numberOfTrailingZeros(row);
+                    row &= row - 1;
+                    var block = region.getBlockState(x0 + x, y0 + topLayer, z0 + z);
+                    int i = 0;
+                    while (i < distinct && found[i] != block)
+                        ++i;
+                    if (i == distinct) {
+                        found[distinct++] = block;
+                    }
+                    if (++counts[i] > bestCount) {
+                        best = block;
+                        bestCount = counts[i];
+                    }
+                }
+            }
+            return best;
+        }
+
+        Block get(int x, int y, int z) {
+            return blocks[(y * size + z) * size + x];
+        }
+
+        /**
+         * Check whether a face of a solid cell is drawn: towards a cell which
+         * isn't solid, or out of the chunk unless all blocks across it are
+         * solid.
+         */
+        boolean isFaceVisible(int x, int y, int z, Direction dir) {
+            int nx = x + dir.getOffsetX(), ny = y + dir.getOffsetY(), nz = z + dir.getOffsetZ();
+            if (nx >= 0 && nx < size && ny >= 0 && ny < size && nz >= 0 && nz < size)
+                return get(nx, ny, nz) == null;
+            // The border layer across the face
+            int bx0 = nx < 0 ? -1 : nx >= size ? CHUNK_SIZE : x * scale;
+            int by0 = ny < 0 ? -1 : ny >= size ? CHUNK_SIZE : y * scale;
+            int bz0 = nz < 0 ? -1 : nz >= size ? CHUNK_SIZE : z * scale;
+            int bx1 = dir.getOffsetX() != 0 ? bx0 + 1 : bx0 + scale;
+            int by1 = dir.getOffsetY() != 0 ? by0 + 1 : by0 + scale;
+            int bz1 = dir.getOffsetZ() != 0 ? bz0 + 1 : bz0 + scale;
+            for (int by = by0; by < by1; by++) {
+                for (int bz = bz0; bz < bz1; bz++) {
+                    for (int bx = bx0; bx < bx1; bx++) {
+                        if (!region.isSolid(bx, by, bz))
+                            return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Get the max light of the blocks of a cell, limited to the region.
+         */
+        private int getCellLight(int x, int y, int z) {
+            int i = ((y + 1) * lightSize + z + 1) * lightSize + x + 1;
+            if (light[i] >= 0)
+                return light[i];
+            int sky = 0, block = 0;
+            int bx1 = Math.min((x + 1) * scale, CHUNK_SIZE + 1);
+            int by1 = Math.min((y + 1) * scale, CHUNK_SIZE + 1);
+            int bz1 = Math.min((z + 1) * scale, CHUNK_SIZE + 1);
+            for (int by = Math.max(y * scale, -1); by < by1; by++) {
+                for (int bz = Math.max(z * scale, -1); bz < bz1; bz++) {
+                    for (int bx = Math.max(x * scale, -1); bx < bx1; bx++) {
+                        sky = Math.max(sky, region.getSkyLight(x0 + bx, y0 + by, z0 + bz));
+                        block = Math.max(block, region.getBlockLight(x0 + bx, y0 + by, z0 + bz));
+                    }
+                }
+            }
+            return light[i] = sky << 4 | block;
+        }
+
+        @Override
+        public Block getBlockState(int x, int y, int z) {
+            if (x < 0 || x >= size || y < 0 || y >= size || z < 0 || z >= size)
+                return Blocks.AIR;
+            var block = get(x, y, z);
+            return block != null ? block : Blocks.AIR;
+        }
+
+        @Override
+        public int getSkyLight(int x, int y, int z) {
+            return getCellLight(x, y, z) >> 4;
+        }
+
+        @Override
+        public int getBlockLight(int x, int y, int z) {
+            return getCellLight(x, y, z) & 15;
+        }
+    }
+
+    /**
+     * Scales the blocks rendered at the cell coordinates up to the cells.
+     */
+    private static final class ScaledBuilder implements IVertexBuilder {
+        private final IVertexBuilder target;
+        private final float scale;
+        private final float x0, y0, z0;
+
+        ScaledBuilder(IVertexBuilder target, int scale, int x0, int y0, int z0) {
+            this.target = target;
+            this.scale = scale;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.z0 = z0;
+        }
+
+        @Override
+        public ScaledBuilder vertex(float x, float y, float z) {
+            target.vertex(x0 + x * scale, y0 + y * scale, z0 + z * scale);
+            return this;
+        }
+
+        @Override
+        public ScaledBuilder color(float r, float g, float b, float a) {
+            target.color(r, g, b, a);
+            return this;
+        }
+
+        @Override
+        public ScaledBuilder color(float r, float g, float b) {
+            target.color(r, g, b);
+            return this;
+        }
+
+        @Override
+        public ScaledBuilder tex(float u, float v) {
+            target.tex(u, v);
+            return this;
+        }
+
+        @Override
+        public void array(VertexFormat format, float[] rawData) {
+            // Forward each vertex, so the elements the format lacks keep the
+            // state of the target
+            for (int i = 0; i < rawData.length; ) {
+                for (var element : format.getElements()) {
+                    if (element.isPosition()) {
+                        vertex(rawData[i], rawData[i + 1], rawData[i + 2]);
+                        i += 3;
+                    } else if (element.getType() == Type.COLOR) {
+                        color(rawData[i], rawData[i + 1], rawData[i + 2], rawData[i + 3]);
+                        i += 4;
+                    } else if (element.getType() == Type.UV) {
+                        tex(rawData[i], rawData[i + 1]);
+                        i += 2;
+                    }
+                }
+                next();
+            }
+        }
+
+        @Override
+        public void next(float x,
+                         float y,
+                         float z,
+                         float r,
+                         float g,
+                         float b,
+                         float a,
+                         float u,
+                         float v) {
+            target.next(x0 + x * scale, y0 + y * scale, z0 + z * scale, r, g, b, a, u, v);
+        }
+
+        @Override
+        public void next() {
+            target.next();
+        }
+    }
+}
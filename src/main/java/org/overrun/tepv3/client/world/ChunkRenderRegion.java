@@ -0,0 +1,268 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world;
+
+import org.overrun.tepv3.client.world.render.BlockRenderType;
+import org.overrun.tepv3.util.Direction;
+import org.overrun.tepv3.world.IBlockView;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.block.Blocks;
+import org.overrun.tepv3.world.chunk.ChunkSection;
+import org.overrun.tepv3.world.light.LightEngine;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The chunk render region</h2>
+ * A copy of the blocks and light of a chunk and a border of one block around
+ * it, taken on the main thread so the chunk can be meshed on another thread
+ * while the world changes. Positions outside the region read as air in the
+ * dark.
+ * <p>
+ * The solid blocks are also kept as rows of bits along x, so
+ * {@link #getVisibleFaceRows} finds the visible faces of 16 blocks with a
+ * few shifts, instead of looking up the 6 neighbours of each block.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ChunkRenderRegion implements IBlockView {
+    /**
+     * The side of the region, a chunk and its border.
+     */
+    public static final int SIZE = CHUNK_SIZE + 2;
+    private final int originX, originY, originZ;
+    private final Block[] blocks = new Block[SIZE * SIZE * SIZE];
+    /**
+     * The sky light in the high nibble and the block light in the low nibble.
+     */
+    private final byte[] light = new byte[SIZE * SIZE * SIZE];
+    /**
+     * The rows along x by {@link #row(int, int) row}: bit x + 1 for the block
+     * at local x.
+     */
+    private final int[] solidRows = new int[SIZE * SIZE];
+    /**
+     * The rows of the chunk itself with a {@link BlockRenderType#MODEL model},
+     * by local y * 16 + local z: bit x for the block at local x.
+     */
+    private final int[] modelRows = new int[CHUNK_SIZE * CHUNK_SIZE];
+
+    /**
+     * Copy the region of a chunk.
+     *
+     * @param world the world
+     * @param x     the chunk x
+     * @param y     the chunk y
+     * @param z     the chunk z
+     */
+    public ChunkRenderRegion(World world, int x, int y, int z) {
+        originX = x * CHUNK_SIZE - 1;
+        originY = y * CHUNK_SIZE - 1;
+        originZ = z * CHUNK_SIZE - 1;
+        // Copy each of the 27 chunks touching the region at once
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    copyChunk(world, x + dx, y + dy, z + dz, dx, dy, dz);
+                }
+            }
+        }
+    }
+
+    private void copyChunk(World world, int cx, int cy, int cz, int dx, int dy, int dz) {
+        // The local range of the chunk inside the region: the far layer, or all
+        int lx0 = dx < 0 ? CHUNK_SIZE - 1 : 0, lx1 = dx > 0 ? 0 : CHUNK_SIZE - 1;
+        int ly0 = dy < 0 ? CHUNK_SIZE - 1 : 0, ly1 = dy > 0 ? 0 : CHUNK_SIZE - 1;
+        int lz0 = dz < 0 ? CHUNK_SIZE - 1 : 0, lz1 = dz > 0 ? 0 : CHUNK_SIZE - 1;
+        var chunk = world.getChunk(cx, cy, cz);
+        var sky = chunk != null ? chunk.getSkyLight() : null;
+        var block = chunk != null ? chunk.getBlockLight() : null;
+        var solid = chunk != null ? chunk.getSection().getSolidMask() : null;
+        // Where bit lx0 of a chunk row lands in a region row
+        int shift = (cx * CHUNK_SIZE + lx0 - originX) - lx0;
+        int rowMask = (1 << (lx1 + 1)) - (1 << lx0);
+        for (int ly = ly0; ly <= ly1; ly++) {
+            int wy = cy * CHUNK_SIZE + ly;
+            for (int lz = lz0; lz <= lz1; lz++) {
+                int wz = cz * CHUNK_SIZE + lz;
+                int row = row(wy - originY, wz - originZ);
+                if (solid != null)
+                    solidRows[row] |= shiftRow(ChunkSection.getRow(solid, ly, lz) & rowMask, shift);
+                for (int lx = lx0; lx <= lx1; lx++) {
+                    int wx = cx * CHUNK_SIZE + lx;
+                    int i = index(wx - originX, wy - originY, wz - originZ);
+                    if (chunk == null) {
+                        blocks[i] = Blocks.AIR;
+                        light[i] = (byte) (LightEngine.MAX_LIGHT << 4);
+                        continue;
+                    }
+                    var state = chunk.getBlockState(lx, ly, lz);
+                    blocks[i] = state;
+                    // Not published yet: the world falls back to the lightmap
+                    int s = sky != null ? sky.get(lx, ly, lz) : world.getSkyLight(wx, wy, wz);
+                    int b = block != null ? block.get(lx, ly, lz) : 0;
+                    light[i] = (byte) (s << 4 | b);
+                    if (dx == 0 && dy == 0 && dz == 0 && state.getRenderType(null) == BlockRenderType.MODEL)
+                        modelRows[ly * CHUNK_SIZE + lz] |= 1 << lx;
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the border on some sides: the blocks there read as non-solid to
+     * the face culling, so all faces of the chunk towards them are kept. The
+     * blocks and the light stay as they are.
+     *
+     * @param sides the sides, bit {@link Direction#getId()} for each
+     */
+    public void openSides(int sides) {
+        for (int a = 0; a < SIZE; a++) {
+            for (int b = 0; b < SIZE; b++) {
+                int r = row(a, b);
+                if ((sides & 1 << Direction.WEST.getId()) != 0)
+                    solidRows[r] &= ~1;
+                if ((sides & 1 << Direction.EAST.getId()) != 0)
+                    solidRows[r] &= ~(1 << (SIZE - 1));
+            }
+            if ((sides & 1 << Direction.DOWN.getId()) != 0)
+                solidRows[row(0, a)] = 0;
+            if ((sides & 1 << Direction.UP.getId()) != 0)
+                solidRows[row(SIZE - 1, a)] = 0;
+            if ((sides & 1 << Direction.NORTH.getId()) != 0)
+                solidRows[row(a, 0)] = 0;
+            if ((sides & 1 << Direction.SOUTH.getId()) != 0)
+                solidRows[row(a, SIZE - 1)] = 0;
+        }
+    }
+
+    private static int shiftRow(int bits, int shift) {
+        return shift >= 0 ? bits << shift : bits >>> -shift;
+    }
+
+    private static int row(int y, int z) {
+        return y * SIZE + z;
+    }
+
+    /**
+     * Get the blocks of the chunk with a {@link BlockRenderType#MODEL model}
+     * in a row.
+     *
+     * @param y the local y
+     * @param z the local z
+     * @return bit x for the block at local x
+     */
+    public int getModelRow(int y, int z) {
+        return modelRows[y * CHUNK_SIZE + z];
+    }
+
+    /**
+     * Get the solid blocks of the chunk in a row.
+     *
+     * @param y the local y
+     * @param z the local z
+     * @return bit x for the block at local x
+     */
+    public int getSolidRow(int y, int z) {
+        return solidRows[row(y + 1, z + 1)] >>> 1 & 0xffff;
+    }
+
+    /**
+     * Check whether a block of the region is solid to the face culling.
+     *
+     * @param x the local x, -1 to 16
+     * @param y the local y, -1 to 16
+     * @param z the local z, -1 to 16
+     * @return {@code true} if solid
+     * @see #openSides(int)
+     */
+    public boolean isSolid(int x, int y, int z) {
+        return (solidRows[row(y + 1, z + 1)] >>> (x + 1) & 1) != 0;
+    }
+
+    /**
+     * Find the visible faces of the blocks of the chunk in a row: the faces
+     * towards a non-solid block. It matches
+     * {@link org.overrun.tepv3.world.block.Block#getVisibleFaces
+     * Block.getVisibleFaces}.
+     *
+     * @param y     the local y
+     * @param z     the local z
+     * @param faces the rows of faces by {@link Direction#getId()}: bit x for
+     *              the face of the block at local x
+     * @return the faces of all directions, or-ed
+     */
+    public int getVisibleFaceRows(int y, int z, int[] faces) {
+        // The rows of the region are one block off the chunk
+        int r = row(y + 1, z + 1);
+        int west = ~solidRows[r] & 0xffff;
+        int east = ~solidRows[r] >>> 2 & 0xffff;
+        int down = ~solidRows[r - SIZE] >>> 1 & 0xffff;
+        int up = ~solidRows[r + SIZE] >>> 1 & 0xffff;
+        int north = ~solidRows[r - 1] >>> 1 & 0xffff;
+        int south = ~solidRows[r + 1] >>> 1 & 0xffff;
+        faces[Direction.WEST.getId()] = west;
+        faces[Direction.EAST.getId()] = east;
+        faces[Direction.DOWN.getId()] = down;
+        faces[Direction.UP.getId()] = up;
+        faces[Direction.NORTH.getId()] = north;
+        faces[Direction.SOUTH.getId()] = south;
+        return west | east | down | up | north | south;
+    }
+
+    private static int index(int x, int y, int z) {
+        return (y * SIZE + z) * SIZE + x;
+    }
+
+    private int indexOf(int x, int y, int z) {
+        x -= originX;
+        y -= originY;
+        z -= originZ;
+        if (x < 0 || x >= SIZE || y < 0 || y >= SIZE || z < 0 || z >= SIZE)
+            return -1;
+        return index(x, y, z);
+    }
+
+    @Override
+    public Block getBlockState(int x, int y, int z) {
+        int i = indexOf(x, y, z);
+        return i < 0 ? Blocks.AIR : blocks[i];
+    }
+
+    @Override
+    public int getSkyLight(int x, int y, int z) {
+        int i = indexOf(x, y, z);
+        return i < 0 ? 0 : light[i] >> 4 & 15;
+    }
+
+    @Override
+    public int getBlockLight(int x, int y, int z) {
+        int i = indexOf(x, y, z);
+        return i < 0 ? 0 : light[i] & 15;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world;
+
+import org.overrun.tepv3.util.Direction;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The chunk visibility</h2>
+ * Which faces of a chunk can see each other through it: bit
+ * {@code from * 6 + to} by {@link Direction#getId()} is set if a path of
+ * non-solid blocks joins the two faces. It is found by flood fill from the
+ * open blocks on the faces when the chunk is meshed, and lets the renderer
+ * skip the chunks hidden behind solid ground.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ChunkVisibility {
+    /**
+     * All faces see each other, as through air.
+     */
+    public static final long ALL = (1L << 36) - 1;
+    /**
+     * No face sees another, as through stone.
+     */
+    public static final long NONE = 0L;
+    private static final int VOLUME = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+
+    private ChunkVisibility() {
+    }
+
+    /**
+     * Check whether a face sees another through the chunk.
+     *
+     * @param visibility the visibility
+     * @param from       the id of the face the sight enters
+     * @param to         the id of the face the sight leaves
+     * @return {@code true} if visible
+     */
+    public static boolean isVisible(long visibility, int from, int to) {
+        return (visibility >>> (from * 6 + to) & 1L) != 0;
+    }
+
+    /**
+     * Find the visibility of the chunk of a region.
+     *
+     * @param region the region
+     * @return the visibility
+     */
+    public static long compute(ChunkRenderRegion region) {
+        var solid = new int[CHUNK_SIZE * CHUNK_SIZE];
+        int solidCount = 0;
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            for (int z = 0; z < CHUNK_SIZE; z++) {
+                int row = region.getSolidRow(y, z);
+                solid[y * CHUNK_SIZE + z] = row;
+                solidCount += Integer.bitCount(row);
+            }
+        }
+        if (solidCount == 0)
+            return ALL;
+        if (solidCount == VOLUME)
+            return NONE;
+        // A flooded block is marked solid, so each block is filled once
+        var queue = new int[VOLUME];
+        long visibility = NONE;
+        // Only the blocks on the faces can join two faces
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            for (int z = 0; z < CHUNK_SIZE; z++) {
+                boolean inner = y > 0 && y < CHUNK_SIZE - 1 && z > 0 && z < CHUNK_SIZE - 1;
+                for (int x = 0; x < CHUNK_SIZE; x += inner ? CHUNK_SIZE - 1 : 1) {
+                    if ((solid[y * CHUNK_SIZE + z] >>> x & 1) == 0)
+                        visibility |= connect(flood(solid, queue, x, y, z));
+                }
+            }
+        }
+        return visibility;
+    }
+
+    /**
+     * Fill the open blocks joined with a block.
+     *
+     * @return the faces reached, bit {@link Direction#getId()} for each
+     */
+    private static int flood(int[] solid, int[] queue, int x, int y, int z) {
+        int head = 0, tail = 0;
+        queue[tail++] = index(x, y, z);
+        solid[y * CHUNK_SIZE + z] |= 1 << x;
+        int faces = 0;
+        while (head < tail) {
+            int i = queue[head++];
+            int bx = i & 15, by = i >> 8, bz = i >> 4 & 15;
+            faces |= faces(bx, by, bz);
+            for (var dir : Direction.values()) {
+                int nx = bx + dir.getOffsetX(), ny = by + dir.getOffsetY(), nz = bz + dir.getOffsetZ();
+                if ((nx | ny | nz) < 0 || nx >= CHUNK_SIZE || ny >= CHUNK_SIZE || nz >= CHUNK_SIZE)
+                    continue;
+                int row = ny * CHUNK_SIZE + nz;
+                if ((solid[row] >>> nx & 1) == 0) {
+                    solid[row] |= 1 << nx;
+                    queue[tail++] = index(nx, ny, nz);
+                }
+            }
+        }
+        return faces;
+    }
+
+    private static int faces(int x, int y, int z) {
+        int faces = 0;
+        if (x == 0) faces |= 1 << Direction.WEST.getId();
+        if (x == CHUNK_SIZE - 1) faces |= 1 << Direction.EAST.getId();
+        if (y == 0) faces |= 1 << Direction.DOWN.getId();
+        if (y == CHUNK_SIZE - 1) faces |= 1 << Direction.UP.getId();
+        if (z == 0) faces |= 1 << Direction.NORTH.getId();
+        if (z == CHUNK_SIZE - 1) faces |= 1 << Direction.SOUTH.getId();
+        return faces;
+    }
+
+    private static long connect(int faces) {
+        long visibility = NONE;
+        for (int from = 0; from < 6; from++) {
+            if ((faces >>> from & 1) != 0)
+                visibility |= (long) faces << from * 6;
+        }
+        return visibility;
+    }
+
+    private static int index(int x, int y, int z) {
+        return y << 8 | z << 4 | x;
+    }
+}
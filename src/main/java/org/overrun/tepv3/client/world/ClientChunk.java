@@ -24,13 +24,24 @@
 
 package org.overrun.tepv3.client.world;
 
-import org.overrun.tepv3.client.world.render.BlockRenderType;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.overrun.tepv3.client.gl.IVertexBuilder;
+import org.overrun.tepv3.client.world.render.ChunkCuller;
+import org.overrun.tepv3.client.world.render.ChunkDrawList;
+import org.overrun.tepv3.client.world.render.ChunkGeometryArena;
+import org.overrun.tepv3.client.world.render.VisibilityGraph;
 import org.overrun.tepv3.world.Chunk;
+import org.overrun.tepv3.util.Direction;
 import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.chunk.WorldChunk;
 import org.overrun.tepv3.world.entity.Entity;
 import org.overrun.tepv3.client.render.model.Mesh;
 import org.overrun.tepv3.client.phys.AABBox;
 
+import java.util.Arrays;
+
 import static java.lang.Math.fma;
 
 /**
@@ -50,13 +61,89 @@ public class ClientChunk extends Chunk {
     public final double y;
     public final double z;
     private boolean dirty = true;
-    private final Mesh[] meshes = new Mesh[2];
-    public long dirtiedTime = 0L;
+    private boolean building;
+    private boolean freed;
+    @Nullable
+    private final ChunkGeometryArena arena;
+    /**
+     * The origin of the draw group the vertices are relative to.
+     */
+    public final int originX, originY, originZ;
+    private int geometryOffset = -1;
+    private int geometryVertices;
+    private int geometryCapacity;
+    /**
+     * The owner of each quad in the arena: the block it came from, as
+     * {@link #getBlockIndex(int, int, int) getBlockIndex}, or for a quad
+     * merged by the {@link GreedyMesher}, its
+     * {@linkplain GreedyMesher#getSliceOwner slice}; {@code null} if the mesh
+     * can't be patched.
+     */
+    @Nullable
+    private short[] quadOwners;
+    private long visibility = ChunkVisibility.ALL;
+    private int visitedFrame = -1;
+    private int frustumFrame = -1;
+    /**
+     * The index in the {@link DirtyChunkQueue}, or -1 if not queued.
+     */
+    int queueIndex = -1;
+    /**
+     * The count of the {@link ChunkBuilder} builds failed in a row.
+     */
+    int failedBuilds;
+    public long dirtiedTime;
+    private long lastBuildTime;
+    /**
+     * The {@linkplain WorldChunk#getBlockVersion() block versions} of this
+     * chunk and its face neighbours in the current mesh, and in the mesh being
+     * built, followed by their {@linkplain WorldChunk#getLightVersion() light
+     * versions}, of the neighbours only the
+     * {@linkplain WorldChunk#getBorderLightVersion border layer} facing this
+     * chunk, and the level and the {@linkplain #getOpenSides open sides}
+     * of the mesh packed as {@code level | sides << 2}.
+     */
+    private final long[] builtVersions = new long[VERSION_COUNT];
+    private final long[] buildingVersions = new long[VERSION_COUNT];
+    private boolean hasBuilt;
+    /**
+     * The {@linkplain ChunkLod level of detail}, 0 for the full resolution.
+     */
+    private int level;
+    /**
+     * The sides towards a chunk of another level, bit
+     * {@link Direction#getId()} for each.
+     */
+    private int seams;
+    private int buildingLevel;
     public static int updates;
+    public static int patches;
     private static long totalTime;
     private static int totalUpdates;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int BLOCK_VERSIONS = 1 + DIRECTIONS.length;
+    private static final int VERSION_COUNT = BLOCK_VERSIONS * 2 + 1;
+    private static final int ALL_SIDES = (1 << DIRECTIONS.length) - 1;
+    /**
+     * The min count of quads a patchable mesh has room for beyond its own.
+     */
+    private static final int PATCH_SLACK_QUADS = 24;
 
+    /**
+     * Create a chunk.
+     *
+     * @param world the world
+     * @param arena the arena the meshes are uploaded to, or {@code null} to
+     *              only {@link #build} them
+     * @param x0    the min x
+     * @param y0    the min y
+     * @param z0    the min z
+     * @param x1    the max x
+     * @param y1    the max y
+     * @param z1    the max z
+     */
     public ClientChunk(World world,
+                       @Nullable ChunkGeometryArena arena,
                        int x0,
                        int y0,
                        int z0,
@@ -64,6 +151,7 @@ public class ClientChunk extends Chunk {
                        int y1,
                        int z1) {
         this.world = world;
+        this.arena = arena;
         this.x0 = x0;
         this.y0 = y0;
         this.z0 = z0;
@@ -74,42 +162,446 @@ public class ClientChunk extends Chunk {
         y = (y0 + y1) / 2.0;
         z = (z0 + z1) / 2.0;
         box = new AABBox(x0, y0, z0, x1, y1, z1);
+        originX = ChunkDrawList.getOrigin(x0);
+        originY = ChunkDrawList.getOrigin(y0);
+        originZ = ChunkDrawList.getOrigin(z0);
+        dirtiedTime = System.currentTimeMillis();
     }
 
-    private void rebuild(int layer) {
+    /**
+     * Copy the blocks this chunk is built from and mark it clean. Call it on
+     * the main thread.
+     *
+     * @return the copy
+     */
+    public ChunkRenderRegion snapshot() {
         dirty = false;
-        if (meshes[layer] != null) meshes[layer].free();
+        building = true;
+        getVersions(buildingVersions);
+        buildingLevel = level;
+        var region = new ChunkRenderRegion(world, x0 >> 4, y0 >> 4, z0 >> 4);
+        region.openSides(getOpenSides(buildingVersions));
+        return region;
+    }
+
+    /**
+     * Build the mesh from a copy of the blocks in one pass. Both light layers
+     * go into the same mesh, as the light is in the vertex colour already. It
+     * does not touch GL, so it can run on any thread.
+     * <p>
+     * The mesh is built at the level of the chunk at the snapshot; above 0, by
+     * {@link ChunkLod}.
+     * </p>
+     *
+     * @param region the copy from {@link #snapshot()}
+     * @param greedy merge the faces by {@link GreedyMesher}; the mesh is then
+     *               drawn with the tiling program
+     * @return the mesh
+     */
+    public Mesh build(ChunkRenderRegion region, boolean greedy) {
+        return build(region, greedy, null);
+    }
+
+    /**
+     * Build the mesh, recording the owner of each quad for {@link #patch}.
+     *
+     * @param region the copy from {@link #snapshot()}
+     * @param greedy merge the faces by {@link GreedyMesher}
+     * @param owners the owner of each quad is added to it, if not
+     *               {@code null} and at the full resolution
+     * @return the mesh
+     * @see #build(ChunkRenderRegion, boolean)
+     */
+    public Mesh build(ChunkRenderRegion region, boolean greedy, @Nullable ShortArrayList owners) {
+        var faces = new int[6];
+        var builder = new Mesh.Builder().enableQuad().packed(originX, originY, originZ);
+        var mesher = greedy ? new GreedyMesher(x0, y0, z0, 1 << buildingLevel) : null;
+        IVertexBuilder target = greedy ? mesher : builder;
+        if (buildingLevel > 0) {
+            ChunkLod.build(region, buildingLevel, x0, y0, z0, target);
+        } else {
+            renderBlocks(region, target, builder, greedy ? null : owners, faces, ALL_SIDES,
+                0, 0, 0, CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE, null);
+        }
+        if (greedy)
+            mesher.build(builder, buildingLevel == 0 ? owners : null, null);
+        return builder.build();
+    }
+
+    /**
+     * Render the blocks with a visible face in a box of this chunk, in local
+     * coordinates.
+     *
+     * @param target  the builder or the {@link GreedyMesher} to render to; the
+     *                mesher is told the block of the quads
+     * @param builder the builder of the mesh
+     * @param owners  the block of each quad the builder gets is added to it,
+     *                if not {@code null}
+     * @param sides   the faces to render, bit {@link Direction#getId()} for
+     *                each
+     * @param skip    the blocks to skip, by
+     *                {@link #getBlockIndex(int, int, int) getBlockIndex}, or
+     *                {@code null}
+     */
+    private void renderBlocks(ChunkRenderRegion region,
+                              IVertexBuilder target,
+                              Mesh.Builder builder,
+                              @Nullable ShortArrayList owners,
+                              int[] faces,
+                              int sides,
+                              int minX, int minY, int minZ,
+                              int maxX, int maxY, int maxZ,
+                              @Nullable boolean[] skip) {
+        int box = (int) ((1L << maxX) - (1L << minX));
+        for (int ly = minY; ly < maxY; ly++) {
+            for (int lz = minZ; lz < maxZ; lz++) {
+                int row = region.getModelRow(ly, lz) & box;
+                if (row == 0)
+                    continue;
+                row &= region.getVisibleFaceRows(ly, lz, faces);
+                // Only the blocks with a visible face
+                while (row != 0) {
+                    int lx = Integer.numberOfTrailingZeros(row);
+                    row &= row - 1;
+                    int blockFaces = getBlockFaces(faces, lx) & sides;
+                    var owner = (short) getBlockIndex(lx, ly, lz);
+                    if (blockFaces == 0 || skip != null && skip[owner])
+                        continue;
+                    if (target instanceof GreedyMesher mesher)
+                        mesher.owner(owner);
+                    int x = x0 + lx, y = y0 + ly, z = z0 + lz;
+                    int before = builder.getVertexCount();
+                    region.getBlockState(x, y, z).render(target, region, blockFaces, x, y, z);
+                    if (owners != null) {
+                        for (int i = builder.getVertexCount() - before; i > 0; i -= 4) {
+                            owners.add(owner);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int getBlockFaces(int[] faces, int lx) {
+        int blockFaces = 0;
+        for (int face = 0; face < faces.length; face++) {
+            blockFaces |= (faces[face] >>> lx & 1) << face;
+        }
+        return blockFaces;
+    }
+
+    private static int getBlockIndex(int lx, int ly, int lz) {
+        return ly << 8 | lz << 4 | lx;
+    }
+
+    /**
+     * Replace the vertices in the arena with a newly built mesh. Call it on
+     * the GL thread.
+     *
+     * @param built      the mesh from {@link #build}, or {@code null} if the
+     *                   build failed
+     * @param owners     the blocks of the quads, if recorded by the build; the
+     *                   mesh can then be {@linkplain #patch patched}
+     * @param visibility the visibility from {@link ChunkVisibility#compute}
+     * @param time       the build time in nanoseconds
+     */
+    public void finishBuilding(Mesh built, @Nullable ShortArrayList owners, long visibility, long time) {
+        building = false;
+        if (built == null)
+            return;
+        this.visibility = visibility;
+        if (freed) {
+            built.free();
+            return;
+        }
+        if (arena != null) {
+            freeGeometry();
+            int count = built.getVertexCount();
+            geometryVertices = count;
+            if (owners != null && buildingLevel == 0 && count > 0) {
+                // Leave room for the quads of edits
+                int quads = count / 4;
+                geometryCapacity = (quads + Math.max(quads / 8, PATCH_SLACK_QUADS)) * 4;
+                quadOwners = Arrays.copyOf(owners.elements(), geometryCapacity / 4);
+            } else {
+                geometryCapacity = count;
+                quadOwners = null;
+            }
+            geometryOffset = arena.upload(built, geometryCapacity);
+        }
+        built.free();
+        System.arraycopy(buildingVersions, 0, builtVersions, 0, VERSION_COUNT);
+        hasBuilt = true;
+        lastBuildTime = time;
         ++updates;
+        totalTime += time;
+        ++totalUpdates;
+    }
+
+    /**
+     * Rebuild the mesh on the calling thread.
+     *
+     * @param greedy merge the faces
+     * @see #build(ChunkRenderRegion, boolean)
+     */
+    public void rebuild(boolean greedy) {
         long before = System.nanoTime();
-        int blocks = 0;
-        var builder = new Mesh.Builder().enableQuad();
-        for (int x = x0; x < x1; x++) {
-            for (int y = y0; y < y1; y++) {
-                for (int z = z0; z < z1; z++) {
-                    var state = world.getBlockState(x, y, z);
-                    if (state.getRenderType(null) == BlockRenderType.MODEL) {
-                        state.render(builder, world, layer, x, y, z);
-                        ++blocks;
+        var region = snapshot();
+        var owners = new ShortArrayList();
+        var built = build(region, greedy, owners);
+        finishBuilding(built, owners, ChunkVisibility.compute(region), System.nanoTime() - before);
+    }
+
+    /**
+     * Update the mesh in the arena in place for a changed block, instead of a
+     * rebuild. Only the quads of the block and of its face neighbours in this
+     * chunk are made again, and for a greedy mesh, the merged quads of the
+     * planes the block is on: they overwrite the old quads of those owners,
+     * and the quads left over are appended, or the holes left are filled by
+     * the last quads. Call it on the GL thread.
+     * <p>
+     * It works on a mesh built with the owners of its quads, which has room
+     * for some more quads, and only if nothing else changed since the mesh was
+     * built.
+     * </p>
+     *
+     * @param x      the block x
+     * @param y      the block y
+     * @param z      the block z
+     * @param greedy whether the mesh was merged by {@link GreedyMesher}
+     * @return {@code true} if the mesh is up to date now; otherwise the chunk
+     * needs a rebuild
+     */
+    public boolean patch(int x, int y, int z, boolean greedy) {
+        if (arena == null || quadOwners == null || geometryOffset < 0 || freed || dirty || building)
+            return false;
+        getVersions(buildingVersions);
+        // The edit only patches its own faces; new light or open sides
+        // change the others
+        if (!Arrays.equals(buildingVersions, BLOCK_VERSIONS, VERSION_COUNT,
+            builtVersions, BLOCK_VERSIONS, VERSION_COUNT))
+            return false;
+        if (Arrays.equals(buildingVersions, 0, BLOCK_VERSIONS, builtVersions, 0, BLOCK_VERSIONS))
+            return true;
+        var region = new ChunkRenderRegion(world, x0 >> 4, y0 >> 4, z0 >> 4);
+        region.openSides(getOpenSides(buildingVersions));
+        var replaced = new boolean[GreedyMesher.OWNER_COUNT];
+        var faces = new int[6];
+        var builder = new Mesh.Builder().enableQuad().packed(originX, originY, originZ);
+        var mesher = greedy ? new GreedyMesher(x0, y0, z0) : null;
+        IVertexBuilder target = greedy ? mesher : builder;
+        var newOwners = new ShortArrayList();
+        for (int i = -1; i < DIRECTIONS.length; i++) {
+            int lx = x - x0, ly = y - y0, lz = z - z0;
+            if (i >= 0) {
+                var dir = DIRECTIONS[i];
+                lx += dir.getOffsetX();
+                ly += dir.getOffsetY();
+                lz += dir.getOffsetZ();
+            }
+            if (lx < 0 || lx >= CHUNK_SIZE || ly < 0 || ly >= CHUNK_SIZE || lz < 0 || lz >= CHUNK_SIZE)
+                continue;
+            replaced[getBlockIndex(lx, ly, lz)] = true;
+            renderBlocks(region, target, builder, greedy ? null : newOwners, faces, ALL_SIDES,
+                lx, ly, lz, lx + 1, ly + 1, lz + 1, null);
+        }
+        if (greedy) {
+            // Merge the planes the faces of the block are on again, with the
+            // faces of the other blocks in them
+            int[] local = {x - x0, y - y0, z - z0};
+            for (int axis = 0; axis < 3; axis++) {
+                int u = local[(axis + 1) % 3], v = local[(axis + 2) % 3];
+                if (u < 0 || u >= CHUNK_SIZE || v < 0 || v >= CHUNK_SIZE)
+                    continue;
+                int e = local[axis];
+                for (int plane = Math.max(e, 0); plane <= Math.min(e + 1, CHUNK_SIZE); plane++) {
+                    replaced[GreedyMesher.getSliceOwner(axis, 0, plane)] = true;
+                    replaced[GreedyMesher.getSliceOwner(axis, 1, plane)] = true;
+                }
+                // The layers on both sides of the planes
+                int[] min = {0, 0, 0}, max = {CHUNK_SIZE, CHUNK_SIZE, CHUNK_SIZE};
+                min[axis] = Math.max(e - 1, 0);
+                max[axis] = Math.min(e + 2, CHUNK_SIZE);
+                renderBlocks(region, mesher, builder, null, faces, 3 << axis * 2,
+                    min[0], min[1], min[2], max[0], max[1], max[2], replaced);
+            }
+            mesher.build(builder, newOwners, owner -> replaced[owner]);
+        }
+        var mesh = builder.build();
+        try {
+            // The quads of the replaced owners, in order
+            var holes = new IntArrayList();
+            int quadCount = geometryVertices / 4;
+            for (int q = 0; q < quadCount; q++) {
+                if (replaced[quadOwners[q]])
+                    holes.add(q);
+            }
+            int added = newOwners.size();
+            if ((quadCount - holes.size() + added) * 4 > geometryCapacity)
+                return false;
+            var data = mesh.getRawData();
+            int quadSize = mesh.getFormat().getVertexSize() * 4;
+            int q = 0;
+            for (; q < added && q < holes.size(); q++) {
+                int slot = holes.getInt(q);
+                arena.write(geometryOffset + slot * 4, data.slice(q * quadSize, quadSize));
+                quadOwners[slot] = newOwners.getShort(q);
+            }
+            if (q < added) {
+                arena.write(geometryOffset + quadCount * 4, data.slice(q * quadSize, (added - q) * quadSize));
+                for (; q < added; q++) {
+                    quadOwners[quadCount++] = newOwners.getShort(q);
+                }
+            } else {
+                // Fill the holes left with the last quads
+                for (int hi = holes.size() - 1; q <= hi; ) {
+                    if (holes.getInt(hi) == quadCount - 1) {
+                        --quadCount;
+                        --hi;
+                        continue;
                     }
+                    int slot = holes.getInt(q++);
+                    --quadCount;
+                    arena.copy(geometryOffset + quadCount * 4, geometryOffset + slot * 4, 4);
+                    quadOwners[slot] = quadOwners[quadCount];
                 }
             }
+            geometryVertices = quadCount * 4;
+        } finally {
+            mesh.free();
+        }
+        visibility = ChunkVisibility.compute(region);
+        System.arraycopy(buildingVersions, 0, builtVersions, 0, BLOCK_VERSIONS);
+        ++patches;
+        return true;
+    }
+
+    /**
+     * Add the vertices in the arena to a draw list, if there are any.
+     *
+     * @param list the list of the group at the {@link #originX origin}
+     */
+    public void addTo(ChunkDrawList list) {
+        if (hasGeometry())
+            list.add(geometryOffset, geometryVertices);
+    }
+
+    public boolean hasGeometry() {
+        return geometryOffset >= 0 && geometryVertices > 0;
+    }
+
+    /**
+     * Get the time of the last build of this chunk.
+     *
+     * @return the time in nanoseconds, or 0 if never built
+     */
+    public long getLastBuildTime() {
+        return lastBuildTime;
+    }
+
+    /**
+     * Get which faces see each other through this chunk; all of them until it
+     * is built.
+     *
+     * @return the visibility
+     * @see ChunkVisibility
+     */
+    public long getVisibility() {
+        return visibility;
+    }
+
+    /**
+     * Mark this chunk in the frustum of a frame.
+     *
+     * @param frame the frame of the {@link ChunkCuller}
+     */
+    public void markInFrustum(int frame) {
+        frustumFrame = frame;
+    }
+
+    /**
+     * Check whether this chunk was marked in the frustum of a frame.
+     *
+     * @param frame the frame of the {@link ChunkCuller}
+     * @return {@code true} if in the frustum
+     */
+    public boolean isInFrustum(int frame) {
+        return frustumFrame == frame;
+    }
+
+    /**
+     * Mark this chunk visited by a walk of the {@link VisibilityGraph}.
+     *
+     * @param frame the walk
+     * @return {@code true} if it wasn't visited by the walk yet
+     */
+    public boolean visit(int frame) {
+        if (visitedFrame == frame)
+            return false;
+        visitedFrame = frame;
+        return true;
+    }
+
+    private void freeGeometry() {
+        if (geometryOffset >= 0) {
+            arena.free(geometryOffset, geometryCapacity);
+            geometryOffset = -1;
         }
-        meshes[layer] = builder.build();
-        long after = System.nanoTime();
-        if (blocks > 0) {
-            totalTime += after - before;
-            ++totalUpdates;
+    }
+
+    /**
+     * Read the versions of the chunks the mesh is built from: this chunk, and
+     * the face neighbours its faces and light at the borders come from.
+     */
+    private void getVersions(long[] dest) {
+        int cx = x0 >> 4, cy = y0 >> 4, cz = z0 >> 4;
+        getVersions(dest, 0, world.getChunk(cx, cy, cz));
+        // The border faces are kept towards another level, or all of them at
+        // a level above 0, but not towards solid ground: nothing shows there
+        int sides = level > 0 ? ALL_SIDES : seams;
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            var dir = DIRECTIONS[i];
+            var chunk = world.getChunk(cx + dir.getOffsetX(), cy + dir.getOffsetY(), cz + dir.getOffsetZ());
+            getVersions(dest, i + 1, chunk);
+            // Only the border layer facing this chunk is read
+            if (chunk != null)
+                dest[i + 1 + BLOCK_VERSIONS] = chunk.getBorderLightVersion(dir.opposite());
+            if (chunk != null && chunk.getSection().isFullySolid())
+                sides &= ~(1 << dir.getId());
         }
+        dest[VERSION_COUNT - 1] = level | (long) sides << 2;
     }
 
-    public void rebuild() {
-        rebuild(0);
-        rebuild(1);
+    /**
+     * Get the sides of the region to {@linkplain ChunkRenderRegion#openSides
+     * open} for a mesh.
+     *
+     * @param versions the versions read for the mesh
+     * @return the sides, bit {@link Direction#getId()} for each
+     */
+    private static int getOpenSides(long[] versions) {
+        return (int) (versions[VERSION_COUNT - 1] >>> 2);
     }
 
-    public void render(int layer) {
-        var mesh = meshes[layer];
-        if (mesh != null) mesh.render();
+    private static void getVersions(long[] dest, int i, @Nullable WorldChunk chunk) {
+        dest[i] = chunk != null ? chunk.getBlockVersion() : 0L;
+        dest[i + BLOCK_VERSIONS] = chunk != null ? chunk.getLightVersion() : 0L;
+    }
+
+    /**
+     * Mark this dirty chunk clean without a rebuild if none of the chunks its
+     * mesh is built from changed since. Call it on the main thread.
+     *
+     * @return {@code true} if it is clean now
+     */
+    public boolean cleanIfUnchanged() {
+        if (!dirty || building || !hasBuilt)
+            return false;
+        getVersions(buildingVersions);
+        if (!Arrays.equals(buildingVersions, builtVersions))
+            return false;
+        dirty = false;
+        return true;
     }
 
     public void markDirty() {
@@ -123,18 +615,63 @@ public class ClientChunk extends Chunk {
         return dirty;
     }
 
+    /**
+     * Whether the mesh is being built and not uploaded yet.
+     *
+     * @return {@code true} if building
+     */
+    public boolean isBuilding() {
+        return building;
+    }
+
+    /**
+     * Get the level of detail the chunk is meshed at from the next build.
+     *
+     * @return the level, 0 for the full resolution
+     * @see ChunkLod
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Set the level of detail. The chunk is not marked dirty.
+     *
+     * @param level the level, 0 to {@link ChunkLod#MAX_LEVEL}
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getSeams() {
+        return seams;
+    }
+
+    /**
+     * Set the sides towards a chunk of another level, where a full-resolution
+     * mesh keeps its border faces so no gap shows between the two. The chunk
+     * is not marked dirty.
+     *
+     * @param seams the sides, bit {@link Direction#getId()} for each
+     */
+    public void setSeams(int seams) {
+        this.seams = seams;
+    }
+
     public double distanceToSqr(Entity entity) {
-        var xd = entity.position.x - x;
-        var yd = entity.position.y - y;
-        var zd = entity.position.z - z;
+        return distanceToSqr(entity.position.x, entity.position.y, entity.position.z);
+    }
+
+    public double distanceToSqr(double x, double y, double z) {
+        var xd = x - this.x;
+        var yd = y - this.y;
+        var zd = z - this.z;
         return fma(xd, xd, fma(yd, yd, zd * zd));
     }
 
     public void free() {
-        for (var mesh : meshes) {
-            if (mesh != null) {
-                mesh.free();
-            }
-        }
+        freed = true;
+        if (arena != null)
+            freeGeometry();
     }
 }
@@ -0,0 +1,203 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world;
+
+import org.overrun.tepv3.client.world.render.ChunkCuller;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * <h2>The dirty chunk queue</h2>
+ * The chunks waiting for meshing, added as they are marked dirty. Each frame
+ * {@link #poll} finds the most urgent of them in one pass over the queue, so
+ * the cost grows with the dirty chunks only.
+ * <p>
+ * A chunk is urgent by, in order:
+ * </p>
+ * <ol>
+ * <li>being in the frustum;</li>
+ * <li>having waited longer, by steps of {@value #AGE_STEP} ms;</li>
+ * <li>being near the viewer.</li>
+ * </ol>
+ * <p>
+ * So the newer chunks nearer to the viewer pass a chunk for about one step
+ * at most; after that it goes before them, and the edits around the viewer
+ * do not starve the far chunks.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class DirtyChunkQueue {
+    /**
+     * The step of the waiting time in milliseconds; the chunks which have
+     * waited the same count of steps are sorted by distance.
+     */
+    public static final long AGE_STEP = 2000L;
+    private static final long MAX_AGE = (1L << 30) - 1;
+    private ClientChunk[] chunks = new ClientChunk[64];
+    private int size;
+    private long[] heapKeys = new long[8];
+
+    /**
+     * Add a dirty chunk, if it isn't queued yet.
+     *
+     * @param chunk the chunk
+     */
+    public void add(ClientChunk chunk) {
+        if (chunk.queueIndex >= 0)
+            return;
+        if (size == chunks.length)
+            chunks = Arrays.copyOf(chunks, size * 2);
+        chunk.queueIndex = size;
+        chunks[size++] = chunk;
+    }
+
+    /**
+     * Remove a chunk, as when it is unloaded.
+     *
+     * @param chunk the chunk
+     */
+    public void remove(ClientChunk chunk) {
+        if (chunk.queueIndex >= 0)
+            removeAt(chunk.queueIndex);
+    }
+
+    private void removeAt(int index) {
+        chunks[index].queueIndex = -1;
+        --size;
+        if (index != size) {
+            chunks[index] = chunks[size];
+            chunks[index].queueIndex = index;
+        }
+        chunks[size] = null;
+    }
+
+    /**
+     * Take the most urgent chunks which are ready to build, most urgent
+     * first. The chunks no longer dirty are dropped; the building or not
+     * ready ones stay queued.
+     *
+     * @param dest   the taken chunks
+     * @param max    the max count to take
+     * @param ready  whether a chunk can be built now
+     * @param culler the culler of this frame
+     * @param x      the viewer x
+     * @param y      the viewer y
+     * @param z      the viewer z
+     * @return the count taken
+     */
+    public int poll(ClientChunk[] dest,
+                    int max,
+                    Predicate<ClientChunk> ready,
+                    ChunkCuller culler,
+                    double x,
+                    double y,
+                    double z) {
+        if (heapKeys.length < max)
+            heapKeys = new long[max];
+        var keys = heapKeys;
+        long now = System.currentTimeMillis();
+        int count = 0;
+        // Backward, so the chunk moved in by a removal is one already seen
+        for (int i = size - 1; i >= 0; i--) {
+            var chunk = chunks[i];
+            if (!chunk.isDirty()) {
+                removeAt(i);
+                continue;
+            }
+            if (chunk.isBuilding() || !ready.test(chunk))
+                continue;
+            long key = getKey(chunk, culler, now, x, y, z);
+            if (count < max) {
+                // Max-heap by key: the least urgent taken chunk on top
+                int j = count++;
+                while (j > 0) {
+                    int parent = (j - 1) >> 1;
+                    if (keys[parent] >= key)
+                        break;
+                    keys[j] = keys[parent];
+                    dest[j] = dest[parent];
+                    j = parent;
+                }
+                keys[j] = key;
+                dest[j] = chunk;
+            } else if (max > 0 && key < keys[0]) {
+                siftDown(dest, keys, count, key, chunk);
+            }
+        }
+        // Sort the few taken chunks by key
+        for (int i = 1; i < count; i++) {
+            long key = keys[i];
+            var chunk = dest[i];
+            int j = i - 1;
+            for (; j >= 0 && keys[j] > key; j--) {
+                keys[j + 1] = keys[j];
+                dest[j + 1] = dest[j];
+            }
+            keys[j + 1] = key;
+            dest[j + 1] = chunk;
+        }
+        for (int i = 0; i < count; i++) {
+            removeAt(dest[i].queueIndex);
+        }
+        return count;
+    }
+
+    private static void siftDown(ClientChunk[] dest, long[] keys, int count, long key, ClientChunk chunk) {
+        int j = 0;
+        while (true) {
+            int child = j * 2 + 1;
+            if (child >= count)
+                break;
+            if (child + 1 < count && keys[child + 1] > keys[child])
+                ++child;
+            if (keys[child] <= key)
+                break;
+            keys[j] = keys[child];
+            dest[j] = dest[child];
+            j = child;
+        }
+        keys[j] = key;
+        dest[j] = chunk;
+    }
+
+    /**
+     * Pack the urgency of a chunk; the smaller, the more urgent.
+     */
+    private static long getKey(ClientChunk chunk, ChunkCuller culler, long now, double x, double y, double z) {
+        long age = Math.min(Math.max(now - chunk.dirtiedTime, 0L) / AGE_STEP, MAX_AGE);
+        double xd = x - chunk.x, yd = y - chunk.y, zd = z - chunk.z;
+        // The bits of a positive float sort as the float
+        long distance = Float.floatToRawIntBits((float) (xd * xd + yd * yd + zd * zd)) & 0xffffffffL;
+        // The longer a chunk waits, the smaller its key
+        return (culler.isVisible(chunk) ? 0L : 1L << 62) | (MAX_AGE - age) << 32 | distance;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,555 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world;
+
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.overrun.tepv3.client.gl.IVertexBuilder;
+import org.overrun.tepv3.client.render.VertexFormat;
+import org.overrun.tepv3.client.render.VertexFormatElement.Type;
+import org.overrun.tepv3.client.render.model.Mesh;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import static org.overrun.tepv3.client.gl.GLColor.toUbyte;
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The greedy mesher</h2>
+ * Collects the quads the blocks of a chunk render, then merges the adjacent
+ * block faces in the same plane with the same sprite, colour and texture
+ * orientation into larger quads. The merged quads repeat the sprite once per
+ * block through {@link Mesh.Builder#sprite}, so they must be drawn with a
+ * program tiling the tex coords.
+ * <p>
+ * Quads which are not a single block face are kept as they are.
+ * </p>
+ * <p>
+ * For a {@linkplain ChunkLod lower level of detail}, the faces are cells of
+ * several blocks. The mesher merges them in cell units and still repeats
+ * the sprite once per block.
+ * </p>
+ * <p>
+ * The quads can be recorded by owner, for {@link ClientChunk#patch patching}:
+ * a merged quad is owned by its {@linkplain #getSliceOwner slice}, and a
+ * quad kept as it is by the {@linkplain #owner block} it came from.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class GreedyMesher implements IVertexBuilder {
+    /**
+     * The count of planes along an axis, including both sides of the chunk.
+     */
+    private static final int PLANES = CHUNK_SIZE + 1;
+    /**
+     * The owner of the merged quads of slice 0; the owners below it are
+     * blocks.
+     */
+    public static final int SLICE_OWNER = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+    /**
+     * The count of owners, blocks and slices.
+     */
+    public static final int OWNER_COUNT = SLICE_OWNER + 6 * PLANES;
+    private static final int CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    /**
+     * The floats per collected vertex: x, y, z, r, g, b, a, u, v.
+     */
+    private static final int VERTEX_FLOATS = 9;
+    private static final int QUAD_FLOATS = VERTEX_FLOATS * 4;
+    private final int originX, originY, originZ;
+    /**
+     * The edge of a face in blocks, and the count of faces along the chunk.
+     */
+    private final int cellSize, size;
+    private float x, y, z, r, g, b, a, u, v;
+    private float[] vertices = new float[QUAD_FLOATS * 256];
+    private int vertexCount;
+    private short owner;
+    /**
+     * The block each collected quad came from.
+     */
+    private short[] quadBlocks = new short[256];
+    // Per quad, filled by classify()
+    private int[] colors, orientations;
+    /**
+     * The quads in each cell of each plane, by direction and plane; 0 if none,
+     * the quad index + 1 otherwise.
+     */
+    private final int[][] slices = new int[6 * PLANES][];
+
+    /**
+     * Create a mesher for a chunk.
+     *
+     * @param originX the min block x of the chunk
+     * @param originY the min block y of the chunk
+     * @param originZ the min block z of the chunk
+     */
+    public GreedyMesher(int originX, int originY, int originZ) {
+        this(originX, originY, originZ, 1);
+    }
+
+    /**
+     * Create a mesher for a chunk whose faces span cells of blocks.
+     *
+     * @param originX  the min block x of the chunk
+     * @param originY  the min block y of the chunk
+     * @param originZ  the min block z of the chunk
+     * @param cellSize the edge of a cell in blocks, a power of 2 up to
+     *                 {@link org.overrun.tepv3.world.Chunk#CHUNK_SIZE CHUNK_SIZE}
+     */
+    public GreedyMesher(int originX, int originY, int originZ, int cellSize) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.cellSize = cellSize;
+        size = CHUNK_SIZE / cellSize;
+    }
+
+    @Override
+    public GreedyMesher vertex(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    @Override
+    public GreedyMesher color(float r, float g, float b, float a) {
+        this.r = r;
+        this.g = g;
+        this.b = b;
+        this.a = a;
+        return this;
+    }
+
+    @Override
+    public GreedyMesher color(float r, float g, float b) {
+        return color(r, g, b, 1);
+    }
+
+    @Override
+    public GreedyMesher tex(float u, float v) {
+        this.u = u;
+        this.v = v;
+        return this;
+    }
+
+    /**
+     * Push the vertices of an array one by one. The elements missing from
+     * the format take the current colour and tex coord.
+     *
+     * @param format  The format
+     * @param rawData The data
+     */
+    @Override
+    public void array(VertexFormat format, float[] rawData) {
+        for (int i = 0; i < rawData.length; ) {
+            float x = 0, y = 0, z = 0, r = this.r, g = this.g, b = this.b, a = this.a, u = this.u, v = this.v;
+            for (var element : format.getElements()) {
+                if (element.isPosition()) {
+                    x = rawData[i++];
+                    y = rawData[i++];
+                    z = rawData[i++];
+                } else if (element.getType() == Type.COLOR) {
+                    r = rawData[i++];
+                    g = rawData[i++];
+                    b = rawData[i++];
+                    a = rawData[i++];
+                } else if (element.getType() == Type.UV) {
+                    u = rawData[i++];
+                    v = rawData[i++];
+                }
+            }
+            next(x, y, z, r, g, b, a, u, v);
+        }
+    }
+
+    @Override
+    public void next(float x,
+                     float y,
+                     float z,
+                     float r,
+                     float g,
+                     float b,
+                     float a,
+                     float u,
+                     float v) {
+        int i = vertexCount * VERTEX_FLOATS;
+        if (i + VERTEX_FLOATS > vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+            quadBlocks = Arrays.copyOf(quadBlocks, vertices.length / QUAD_FLOATS);
+        }
+        quadBlocks[vertexCount >> 2] = owner;
+        vertices[i] = x;
+        vertices[i + 1] = y;
+        vertices[i + 2] = z;
+        vertices[i + 3] = r;
+        vertices[i + 4] = g;
+        vertices[i + 5] = b;
+        vertices[i + 6] = a;
+        vertices[i + 7] = u;
+        vertices[i + 8] = v;
+        ++vertexCount;
+    }
+
+    @Override
+    public void next() {
+        next(x, y, z, r, g, b, a, u, v);
+    }
+
+    /**
+     * Set the block the next quads come from.
+     *
+     * @param block the owner of the block, below {@link #SLICE_OWNER}
+     * @return this
+     */
+    public GreedyMesher owner(int block) {
+        owner = (short) block;
+        return this;
+    }
+
+    /**
+     * Get the owner of the merged quads in a plane of a chunk.
+     *
+     * @param axis  the axis the plane is across: 0 for x, 1 for y, 2 for z
+     * @param side  the side the faces look at: 0 or 1
+     * @param plane the plane, from 0 to {@link org.overrun.tepv3.world.Chunk#CHUNK_SIZE CHUNK_SIZE}
+     * @return the owner
+     */
+    public static int getSliceOwner(int axis, int side, int plane) {
+        return SLICE_OWNER + (axis * 2 + side) * PLANES + plane;
+    }
+
+    /**
+     * Get the count of the collected quads.
+     *
+     * @return the count
+     */
+    public int getQuadCount() {
+        return vertexCount / 4;
+    }
+
+    /**
+     * Merge the collected quads and write them to a builder.
+     *
+     * @param builder the builder, with quads enabled
+     * @return the count of written quads
+     */
+    public int build(Mesh.Builder builder) {
+        return build(builder, null, null);
+    }
+
+    /**
+     * Merge the collected quads and write them to a builder, with their
+     * owners.
+     *
+     * @param builder the builder, with quads enabled
+     * @param owners  the owner of each written quad is added to it, if not
+     *                {@code null}
+     * @param keep    the owners whose quads are written, or {@code null} for
+     *                all
+     * @return the count of written quads
+     */
+    public int build(Mesh.Builder builder, @Nullable ShortArrayList owners, @Nullable IntPredicate keep) {
+        int quads = getQuadCount();
+        colors = new int[quads];
+        orientations = new int[quads];
+        int written = 0;
+        for (int q = 0; q < quads; q++) {
+            int slice = classify(q);
+            if (slice < 0) {
+                if (keep != null && !keep.test(quadBlocks[q]))
+                    continue;
+                emit(builder, q, 0, 0);
+                if (owners != null)
+                    owners.add(quadBlocks[q]);
+                ++written;
+                continue;
+            }
+            if (keep != null && !keep.test(SLICE_OWNER + slice))
+                continue;
+            var cells = slices[slice];
+            if (cells == null)
+                cells = slices[slice] = new int[CELLS];
+            cells[cell(q, slice / PLANES >> 1)] = q + 1;
+        }
+        for (int slice = 0; slice < slices.length; slice++) {
+            var cells = slices[slice];
+            if (cells == null)
+                continue;
+            int merged = merge(builder, cells);
+            if (owners != null) {
+                for (int i = 0; i < merged; i++) {
+                    owners.add((short) (SLICE_OWNER + slice));
+                }
+            }
+            written += merged;
+        }
+        return written;
+    }
+
+    /**
+     * Find the plane of a quad if it is a single cell face.
+     *
+     * @param q the quad
+     * @return the slice index ((axis * 2 + side) * {@link #PLANES} + plane),
+     * or -1 if it can't be merged
+     */
+    private int classify(int q) {
+        int base = q * QUAD_FLOATS;
+        // The axis all vertices share
+        int axis = -1;
+        for (int n = 0; n < 3; n++) {
+            float c = vertices[base + n];
+            if (vertices[base + VERTEX_FLOATS + n] == c
+                && vertices[base + VERTEX_FLOATS * 2 + n] == c
+                && vertices[base + VERTEX_FLOATS * 3 + n] == c) {
+                axis = n;
+                break;
+            }
+        }
+        if (axis < 0)
+            return -1;
+        int plane = toCell(vertices[base + axis], axis);
+        if (plane < 0 || plane > size)
+            return -1;
+        int ax = (axis + 1) % 3;
+        int bx = (axis + 2) % 3;
+        float minA = Float.MAX_VALUE, minB = Float.MAX_VALUE;
+        float minU = Float.MAX_VALUE, minV = Float.MAX_VALUE;
+        for (int k = 0; k < 4; k++) {
+            int i = base + k * VERTEX_FLOATS;
+            minA = Math.min(minA, vertices[i + ax]);
+            minB = Math.min(minB, vertices[i + bx]);
+            minU = Math.min(minU, vertices[i + 7]);
+            minV = Math.min(minV, vertices[i + 8]);
+        }
+        int cellA = toCell(minA, ax);
+        int cellB = toCell(minB, bx);
+        if (cellA < 0 || cellA >= size || cellB < 0 || cellB >= size)
+            return -1;
+        // The texture must map linearly onto the cell: uv = uv0 + a * da + b * db
+        int[] lu = new int[4], lv = new int[4], da = new int[4], db = new int[4];
+        int color = packColor(base);
+        for (int k = 0; k < 4; k++) {
+            int i = base + k * VERTEX_FLOATS;
+            float ka = vertices[i + ax] - minA, kb = vertices[i + bx] - minB;
+            if ((ka != 0 && ka != cellSize) || (kb != 0 && kb != cellSize) || packColor(i) != color)
+                return -1;
+            da[k] = (int) ka / cellSize;
+            db[k] = (int) kb / cellSize;
+            lu[k] = vertices[i + 7] == minU ? 0 : 1;
+            lv[k] = vertices[i + 8] == minV ? 0 : 1;
+        }
+        int orientation = orientation(lu, da, db);
+        int orientationV = orientation(lv, da, db);
+        if (orientation < 0 || orientationV < 0)
+            return -1;
+        // The side the face looks at, from the winding
+        int i1 = base + VERTEX_FLOATS, i2 = base + VERTEX_FLOATS * 2;
+        float ea0 = vertices[i1 + ax] - vertices[base + ax], eb0 = vertices[i1 + bx] - vertices[base + bx];
+        float ea1 = vertices[i2 + ax] - vertices[base + ax], eb1 = vertices[i2 + bx] - vertices[base + bx];
+        int side = ea0 * eb1 - eb0 * ea1 > 0 ? 1 : 0;
+        colors[q] = color;
+        orientations[q] = orientation | orientationV << 8;
+        return (axis * 2 + side) * PLANES + plane;
+    }
+
+    /**
+     * Find the linear map of a tex coord from the corners of the face.
+     *
+     * @return the offset, the a step + 1 and the b step + 1 packed in 2 bits
+     * each, or -1 if it isn't linear
+     */
+    private static int orientation(int[] l, int[] da, int[] db) {
+        int l0 = -1, la = 0, lb = 0;
+        for (int k = 0; k < 4; k++) {
+            if (da[k] == 0 && db[k] == 0)
+                l0 = l[k];
+        }
+        if (l0 < 0)
+            return -1;
+        for (int k = 0; k < 4; k++) {
+            if (da[k] == 1 && db[k] == 0)
+                la = l[k] - l0;
+            else if (da[k] == 0 && db[k] == 1)
+                lb = l[k] - l0;
+        }
+        for (int k = 0; k < 4; k++) {
+            if (l[k] != l0 + la * da[k] + lb * db[k])
+                return -1;
+        }
+        return l0 | (la + 1) << 2 | (lb + 1) << 4;
+    }
+
+    private int cell(int q, int axis) {
+        int base = q * QUAD_FLOATS;
+        int ax = (axis + 1) % 3;
+        int bx = (axis + 2) % 3;
+        float minA = Float.MAX_VALUE, minB = Float.MAX_VALUE;
+        for (int k = 0; k < 4; k++) {
+            minA = Math.min(minA, vertices[base + k * VERTEX_FLOATS + ax]);
+            minB = Math.min(minB, vertices[base + k * VERTEX_FLOATS + bx]);
+        }
+        return toCell(minA, ax) + toCell(minB, bx) * CHUNK_SIZE;
+    }
+
+    /**
+     * Get the cell a coordinate is on the edge of.
+     *
+     * @return the cell, or -1 if the coordinate isn't on a cell edge
+     */
+    private int toCell(float coord, int axis) {
+        float local = coord - origin(axis);
+        int cell = (int) local / cellSize;
+        return cell * cellSize == local ? cell : -1;
+    }
+
+    private int origin(int axis) {
+        return switch (axis) {
+            case 0 -> originX;
+            case 1 -> originY;
+            default -> originZ;
+        };
+    }
+
+    private int packColor(int i) {
+        return toUbyte(vertices[i + 3])
+            | toUbyte(vertices[i + 4]) << 8
+            | toUbyte(vertices[i + 5]) << 16
+            | toUbyte(vertices[i + 6]) << 24;
+    }
+
+    private boolean canMerge(int q0, int q1) {
+        if (q1 < 0)
+            return false;
+        if (colors[q0] != colors[q1] || orientations[q0] != orientations[q1])
+            return false;
+        // The same sprite: compare the tex coord bounds
+        int b0 = q0 * QUAD_FLOATS, b1 = q1 * QUAD_FLOATS;
+        for (int k = 0; k < 4; k++) {
+            int i0 = b0 + k * VERTEX_FLOATS, i1 = b1 + k * VERTEX_FLOATS;
+            if (vertices[i0 + 7] != vertices[i1 + 7] || vertices[i0 + 8] != vertices[i1 + 8])
+                return false;
+        }
+        return true;
+    }
+
+    private int merge(Mesh.Builder builder, int[] cells) {
+        int written = 0;
+        for (int cb = 0; cb < size; cb++) {
+            for (int ca = 0; ca < size; ca++) {
+                int q = cells[ca + cb * CHUNK_SIZE] - 1;
+                if (q < 0)
+                    continue;
+                int w = 1;
+                while (ca + w < size && canMerge(q, cells[ca + w + cb * CHUNK_SIZE] - 1))
+                    ++w;
+                int h = 1;
+                grow:
+                while (cb + h < size) {
+                    for (int k = 0; k < w; k++) {
+                        if (!canMerge(q, cells[ca + k + (cb + h) * CHUNK_SIZE] - 1))
+                            break grow;
+                    }
+                    ++h;
+                }
+                for (int j = 0; j < h; j++) {
+                    Arrays.fill(cells, ca + (cb + j) * CHUNK_SIZE, ca + w + (cb + j) * CHUNK_SIZE, 0);
+                }
+                emit(builder, q, w, h);
+                ++written;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Write a quad, stretched over {@code w} &times; {@code h} faces if it is
+     * a classified face. The sprite repeats once per block.
+     *
+     * @param builder the builder
+     * @param q       the quad
+     * @param w       the faces along the first plane axis, or 0 to keep the quad
+     * @param h       the faces along the second plane axis
+     */
+    private void emit(Mesh.Builder builder, int q, int w, int h) {
+        int base = q * QUAD_FLOATS;
+        float minU = Float.MAX_VALUE, minV = Float.MAX_VALUE, maxU = -Float.MAX_VALUE, maxV = -Float.MAX_VALUE;
+        for (int k = 0; k < 4; k++) {
+            int i = base + k * VERTEX_FLOATS;
+            minU = Math.min(minU, vertices[i + 7]);
+            minV = Math.min(minV, vertices[i + 8]);
+            maxU = Math.max(maxU, vertices[i + 7]);
+            maxV = Math.max(maxV, vertices[i + 8]);
+        }
+        builder.sprite(minU, minV, maxU, maxV);
+        int axis = 0, ax = 0, bx = 0;
+        float minA = 0, minB = 0;
+        if (w > 0) {
+            for (int n = 0; n < 3; n++) {
+                if (vertices[base + n] == vertices[base + VERTEX_FLOATS + n]
+                    && vertices[base + n] == vertices[base + VERTEX_FLOATS * 2 + n]) {
+                    axis = n;
+                    break;
+                }
+            }
+            ax = (axis + 1) % 3;
+            bx = (axis + 2) % 3;
+            minA = Float.MAX_VALUE;
+            minB = Float.MAX_VALUE;
+            for (int k = 0; k < 4; k++) {
+                minA = Math.min(minA, vertices[base + k * VERTEX_FLOATS + ax]);
+                minB = Math.min(minB, vertices[base + k * VERTEX_FLOATS + bx]);
+            }
+        }
+        var pos = new float[3];
+        for (int k = 0; k < 4; k++) {
+            int i = base + k * VERTEX_FLOATS;
+            pos[0] = vertices[i];
+            pos[1] = vertices[i + 1];
+            pos[2] = vertices[i + 2];
+            float lu = maxU > minU ? (vertices[i + 7] - minU) / (maxU - minU) : 0;
+            float lv = maxV > minV ? (vertices[i + 8] - minV) / (maxV - minV) : 0;
+            if (w > 0) {
+                int da = (int) (pos[ax] - minA) / cellSize;
+                int db = (int) (pos[bx] - minB) / cellSize;
+                pos[ax] = minA + da * w * cellSize;
+                pos[bx] = minB + db * h * cellSize;
+                // Continue the tex coords over the merged faces
+                int ou = orientations[q], ov = ou >> 8;
+                lu = ((ou & 3) + ((ou >> 2 & 3) - 1) * da * w + ((ou >> 4 & 3) - 1) * db * h) * cellSize;
+                lv = ((ov & 3) + ((ov >> 2 & 3) - 1) * da * w + ((ov >> 4 & 3) - 1) * db * h) * cellSize;
+            }
+            builder.color(vertices[i + 3], vertices[i + 4], vertices[i + 5], vertices[i + 6])
+                .tex(lu, lv)
+                .vertex(pos[0], pos[1], pos[2])
+                .next();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world;
+
+import org.overrun.tepv3.client.world.render.ChunkCuller;
+
+import java.util.function.Predicate;
+
+/**
+ * <h2>The rebuild scheduler</h2>
+ * Spends a time budget per frame on the chunk rebuilds, instead of a fixed
+ * count of chunks.
+ * <p>
+ * On the GL thread, the finished meshes are uploaded and the dirty chunks
+ * snapshotted until the budget is used up. The workers are given about one
+ * budget of meshing per worker per frame, by the cost each chunk took last
+ * time; a chunk never built is guessed at the running average. An empty sky
+ * chunk is then almost free, and many are taken at once, while a dense
+ * surface chunk takes its real share.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class RebuildScheduler implements ChunkBuilder.UploadListener {
+    /**
+     * The max count of chunks taken from the dirty queue per frame.
+     */
+    public static final int MAX_CANDIDATES = 64;
+    /**
+     * The weight of a new sample in the running averages.
+     */
+    private static final double SMOOTHING = 1.0 / 16.0;
+    private final ChunkBuilder chunkBuilder;
+    private final DirtyChunkQueue dirtyQueue;
+    private final long budget;
+    private final ClientChunk[] candidates = new ClientChunk[MAX_CANDIDATES];
+    private double averageBuildTime = 1_000_000.0;
+    private double averageLatency;
+    private long lastFrameTime;
+    private int lastScheduled;
+    private int lastUploaded;
+    private long skippedRebuilds;
+
+    /**
+     * Create a rebuild scheduler.
+     *
+     * @param chunkBuilder the chunk builder
+     * @param dirtyQueue   the dirty chunks
+     * @param budget       the time per frame in milliseconds
+     */
+    public RebuildScheduler(ChunkBuilder chunkBuilder, DirtyChunkQueue dirtyQueue, float budget) {
+        this.chunkBuilder = chunkBuilder;
+        this.dirtyQueue = dirtyQueue;
+        this.budget = (long) (budget * 1_000_000.0);
+    }
+
+    /**
+     * Upload the finished chunks, then schedule the most urgent dirty chunks
+     * the budget allows.
+     *
+     * @param ready  whether a chunk can be built now
+     * @param culler the culler of this frame
+     * @param x      the viewer x
+     * @param y      the viewer y
+     * @param z      the viewer z
+     */
+    public void update(Predicate<ClientChunk> ready, ChunkCuller culler, double x, double y, double z) {
+        long start = System.nanoTime();
+        long deadline = start + budget;
+        lastUploaded = chunkBuilder.upload(dirtyQueue, deadline, this);
+        lastScheduled = 0;
+        // The meshing the workers are given, kept to about one frame ahead
+        double workerBudget = (double) budget * chunkBuilder.getParallelism();
+        double queued = chunkBuilder.getPendingCount() * averageBuildTime;
+        if (System.nanoTime() < deadline && queued < workerBudget) {
+            int count = dirtyQueue.poll(candidates, MAX_CANDIDATES, ready, culler, x, y, z);
+            for (int i = 0; i < count; i++) {
+                var chunk = candidates[i];
+                candidates[i] = null;
+                if (chunk.cleanIfUnchanged()) {
+                    ++skippedRebuilds;
+                    continue;
+                }
+                boolean fits = queued < workerBudget && System.nanoTime() < deadline;
+                if (fits || (lastScheduled == 0 && chunkBuilder.getPendingCount() == 0)) {
+                    queued += getCost(chunk);
+                    chunkBuilder.schedule(chunk);
+                    ++lastScheduled;
+                } else {
+                    // Over the budget; wait for the next frame
+                    dirtyQueue.add(chunk);
+                }
+            }
+        }
+        lastFrameTime = System.nanoTime() - start;
+    }
+
+    /**
+     * Get the expected meshing time of a chunk.
+     *
+     * @param chunk the chunk
+     * @return the time in nanoseconds
+     */
+    public double getCost(ClientChunk chunk) {
+        long time = chunk.getLastBuildTime();
+        return time > 0 ? time : averageBuildTime;
+    }
+
+    @Override
+    public void uploaded(ClientChunk chunk, long buildTime, long latency) {
+        averageBuildTime += (buildTime - averageBuildTime) * SMOOTHING;
+        averageLatency += (latency - averageLatency) * SMOOTHING;
+    }
+
+    /**
+     * Get the count of chunks waiting for meshing, being meshed or waiting
+     * for upload.
+     *
+     * @return the count
+     */
+    public int getBacklog() {
+        return dirtyQueue.size() + chunkBuilder.getPendingCount();
+    }
+
+    /**
+     * Get the running average of the time from a chunk being dirtied to its
+     * new mesh being uploaded.
+     *
+     * @return the time in milliseconds
+     */
+    public double getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * Get the running average of the meshing time of a chunk.
+     *
+     * @return the time in milliseconds
+     */
+    public double getAverageBuildTime() {
+        return averageBuildTime / 1e6;
+    }
+
+    /**
+     * Get the time spent on the GL thread by the last {@link #update}.
+     *
+     * @return the time in milliseconds
+     */
+    public double getLastFrameTime() {
+        return lastFrameTime / 1e6;
+    }
+
+    public int getLastScheduled() {
+        return lastScheduled;
+    }
+
+    public int getLastUploaded() {
+        return lastUploaded;
+    }
+
+    /**
+     * Get the count of dirty chunks left unbuilt, as nothing they are built
+     * from changed.
+     *
+     * @return the count since the start
+     * @see ClientChunk#cleanIfUnchanged()
+     */
+    public long getSkippedRebuilds() {
+        return skippedRebuilds;
+    }
+}
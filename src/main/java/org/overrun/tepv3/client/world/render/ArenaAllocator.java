@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world.render;
+
+import it.unimi.dsi.fastutil.ints.Int2IntRBTreeMap;
+import it.unimi.dsi.fastutil.longs.LongRBTreeSet;
+
+/**
+ * <h2>The arena allocator</h2>
+ * A best-fit sub-allocator of the ranges of one buffer, in whole units
+ * (the chunk geometry counts vertices). The freed ranges merge with their
+ * neighbours. It only does the bookkeeping, so it works without GL.
+ * <p>
+ * The free ranges are kept both by offset, to merge them, and by size, so
+ * finding a fit takes logarithmic time however fragmented the buffer is.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ArenaAllocator {
+    /**
+     * The free ranges: offset to size.
+     */
+    private final Int2IntRBTreeMap freeRanges = new Int2IntRBTreeMap();
+    /**
+     * The free ranges by size, then by offset, as
+     * {@link #getSizeKey(int, int) getSizeKey}.
+     */
+    private final LongRBTreeSet freeSizes = new LongRBTreeSet();
+    private int capacity;
+    private int used;
+
+    /**
+     * Create an allocator.
+     *
+     * @param capacity the units of the buffer
+     */
+    public ArenaAllocator(int capacity) {
+        if (capacity > 0)
+            addFree(0, capacity);
+        this.capacity = capacity;
+    }
+
+    private static long getSizeKey(int offset, int size) {
+        return (long) size << 32 | offset;
+    }
+
+    private void addFree(int offset, int size) {
+        freeRanges.put(offset, size);
+        freeSizes.add(getSizeKey(offset, size));
+    }
+
+    private void removeFree(int offset, int size) {
+        freeRanges.remove(offset);
+        freeSizes.remove(getSizeKey(offset, size));
+    }
+
+    /**
+     * Allocate a range, from the smallest free range large enough, the one
+     * with the lowest offset among those of the same size.
+     *
+     * @param size the units of the range
+     * @return the offset of the range, or {@code -1} if no free range is
+     * large enough; {@link #grow(int) grow} the buffer then
+     */
+    public int allocate(int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        var fits = freeSizes.tailSet(getSizeKey(0, size));
+        if (fits.isEmpty())
+            return -1;
+        long key = fits.firstLong();
+        int offset = (int) key;
+        int free = (int) (key >>> 32);
+        removeFree(offset, free);
+        if (free > size)
+            addFree(offset + size, free - size);
+        used += size;
+        return offset;
+    }
+
+    /**
+     * Free a range.
+     *
+     * @param offset the offset from {@link #allocate(int)}
+     * @param size   the units of the range
+     */
+    public void free(int offset, int size) {
+        if (offset < 0 || size <= 0 || offset + size > capacity)
+            throw new IllegalArgumentException("Invalid range: " + offset + "+" + size);
+        int start = offset, end = offset + size;
+        var before = freeRanges.headMap(offset + 1);
+        if (!before.isEmpty()) {
+            int prev = before.lastIntKey();
+            int prevSize = freeRanges.get(prev);
+            int prevEnd = prev + prevSize;
+            if (prevEnd > offset)
+                throw new IllegalStateException("Range already free: " + offset + "+" + size);
+            if (prevEnd == offset) {
+                start = prev;
+                removeFree(prev, prevSize);
+            }
+        }
+        var after = freeRanges.tailMap(offset);
+        if (!after.isEmpty()) {
+            int next = after.firstIntKey();
+            if (next < end)
+                throw new IllegalStateException("Range already free: " + offset + "+" + size);
+            if (next == end) {
+                int nextSize = freeRanges.get(next);
+                end += nextSize;
+                removeFree(next, nextSize);
+            }
+        }
+        addFree(start, end - start);
+        used -= size;
+    }
+
+    /**
+     * Extend the buffer; the new units are free.
+     *
+     * @param newCapacity the units of the buffer
+     */
+    public void grow(int newCapacity) {
+        if (newCapacity <= capacity)
+            return;
+        int last = freeRanges.isEmpty() ? -1 : freeRanges.lastIntKey();
+        if (last >= 0 && last + freeRanges.get(last) == capacity) {
+            removeFree(last, capacity - last);
+            addFree(last, newCapacity - last);
+        } else {
+            addFree(capacity, newCapacity - capacity);
+        }
+        capacity = newCapacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getUsed() {
+        return used;
+    }
+
+    /**
+     * Get the count of free ranges; more of them means more fragmentation.
+     *
+     * @return the count
+     */
+    public int getFreeRangeCount() {
+        return freeRanges.size();
+    }
+}
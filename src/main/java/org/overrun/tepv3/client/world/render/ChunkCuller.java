@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world.render;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.overrun.tepv3.client.render.Frustum;
+import org.overrun.tepv3.client.world.ClientChunk;
+import org.overrun.tepv3.world.World;
+
+import java.util.Arrays;
+
+/**
+ * <h2>The chunk culler</h2>
+ * Finds the chunks in the frustum once per frame. The chunks are kept by
+ * cells of the {@linkplain ChunkDrawList#GROUP_SIZE draw group} size, with
+ * their bounds in a flat array per cell; a cell out of the frustum is skipped
+ * by one test, a cell fully in it takes all its chunks without a test, and
+ * only the cells across the planes test their chunks one by one. It works
+ * without GL.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ChunkCuller {
+    private final Long2ObjectOpenHashMap<Cell> cells = new Long2ObjectOpenHashMap<>();
+    private ClientChunk[] visible = new ClientChunk[256];
+    private int visibleCount;
+    private int frame;
+    private int chunkTests;
+
+    private static final class Cell {
+        private ClientChunk[] chunks = new ClientChunk[16];
+        /**
+         * The bounds of each chunk, {@code minX minY minZ maxX maxY maxZ}.
+         */
+        private float[] bounds = new float[16 * 6];
+        /**
+         * The union of the chunk bounds.
+         */
+        private final float[] box = new float[6];
+        private int size;
+
+        private void add(ClientChunk chunk) {
+            if (size == chunks.length) {
+                chunks = Arrays.copyOf(chunks, size * 2);
+                bounds = Arrays.copyOf(bounds, size * 2 * 6);
+            }
+            chunks[size] = chunk;
+            int i = size * 6;
+            bounds[i] = chunk.x0;
+            bounds[i + 1] = chunk.y0;
+            bounds[i + 2] = chunk.z0;
+            bounds[i + 3] = chunk.x1;
+            bounds[i + 4] = chunk.y1;
+            bounds[i + 5] = chunk.z1;
+            ++size;
+            if (size == 1) {
+                System.arraycopy(bounds, 0, box, 0, 6);
+            } else {
+                include(i);
+            }
+        }
+
+        private void remove(ClientChunk chunk) {
+            for (int i = 0; i < size; i++) {
+                if (chunks[i] == chunk) {
+                    --size;
+                    chunks[i] = chunks[size];
+                    chunks[size] = null;
+                    System.arraycopy(bounds, size * 6, bounds, i * 6, 6);
+                    if (size > 0) {
+                        System.arraycopy(bounds, 0, box, 0, 6);
+                        for (int j = 1; j < size; j++) {
+                            include(j * 6);
+                        }
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void include(int i) {
+            for (int k = 0; k < 3; k++) {
+                box[k] = Math.min(box[k], bounds[i + k]);
+                box[k + 3] = Math.max(box[k + 3], bounds[i + k + 3]);
+            }
+        }
+    }
+
+    private static long getCellKey(ClientChunk chunk) {
+        return World.getChunkPos(chunk.x0 >> ChunkDrawList.GROUP_SHIFT,
+            chunk.y0 >> ChunkDrawList.GROUP_SHIFT,
+            chunk.z0 >> ChunkDrawList.GROUP_SHIFT);
+    }
+
+    public void add(ClientChunk chunk) {
+        long key = getCellKey(chunk);
+        var cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell();
+            cells.put(key, cell);
+        }
+        cell.add(chunk);
+    }
+
+    public void remove(ClientChunk chunk) {
+        long key = getCellKey(chunk);
+        var cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(chunk);
+            if (cell.size == 0)
+                cells.remove(key);
+        }
+    }
+
+    /**
+     * Find the chunks in the frustum, and mark them for
+     * {@link #isVisible(ClientChunk)}.
+     *
+     * @param frustum the frustum of this frame
+     * @return the count of chunks in the frustum
+     */
+    public int cull(Frustum frustum) {
+        ++frame;
+        for (int i = 0; i < visibleCount; i++) {
+            visible[i] = null;
+        }
+        visibleCount = 0;
+        chunkTests = 0;
+        for (var cell : cells.values()) {
+            int result = frustum.classifyAab(cell.box, 0);
+            if (result == Frustum.OUTSIDE)
+                continue;
+            var chunks = cell.chunks;
+            if (result == Frustum.INSIDE) {
+                for (int i = 0; i < cell.size; i++) {
+                    accept(chunks[i]);
+                }
+            } else {
+                var bounds = cell.bounds;
+                chunkTests += cell.size;
+                for (int i = 0; i < cell.size; i++) {
+                    if (frustum.testAab(bounds, i * 6))
+                        accept(chunks[i]);
+                }
+            }
+        }
+        return visibleCount;
+    }
+
+    private void accept(ClientChunk chunk) {
+        if (visibleCount == visible.length)
+            visible = Arrays.copyOf(visible, visibleCount * 2);
+        visible[visibleCount++] = chunk;
+        chunk.markInFrustum(frame);
+    }
+
+    /**
+     * Check whether a chunk was in the frustum by the last {@link #cull}.
+     *
+     * @param chunk the chunk
+     * @return {@code true} if in the frustum
+     */
+    public boolean isVisible(ClientChunk chunk) {
+        return chunk.isInFrustum(frame);
+    }
+
+    /**
+     * Get the chunks in the frustum by the last {@link #cull}, in no order.
+     * The array is reused; read up to {@link #getVisibleCount()}.
+     *
+     * @return the chunks
+     */
+    public ClientChunk[] getVisible() {
+        return visible;
+    }
+
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    /**
+     * Get the count of chunks tested one by one in the last {@link #cull}.
+     *
+     * @return the count
+     */
+    public int getChunkTests() {
+        return chunkTests;
+    }
+
+    public int getCellCount() {
+        return cells.size();
+    }
+}
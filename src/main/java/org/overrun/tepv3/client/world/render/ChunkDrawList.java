@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world.render;
+
+import java.util.Arrays;
+
+/**
+ * <h2>The chunk draw list</h2>
+ * The chunks of one draw group to submit by one multi-draw, as the index
+ * counts and base vertices in the {@link ChunkGeometryArena}. A draw group is
+ * a cube of {@value #GROUP_SIZE} blocks; the chunk vertices are relative to
+ * its center, so the group is drawn with one offset. It works without GL.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ChunkDrawList {
+    /**
+     * The shift of the {@linkplain #GROUP_SIZE group size}.
+     */
+    public static final int GROUP_SHIFT = 7;
+    /**
+     * The side of a draw group in blocks. The packed positions reach 128
+     * blocks around the center, so a group can't be larger than 256.
+     */
+    public static final int GROUP_SIZE = 1 << GROUP_SHIFT;
+    public final int originX, originY, originZ;
+    private int[] counts = new int[64];
+    private int[] baseVertices = new int[64];
+    private int size;
+    private int maxVertexCount;
+
+    /**
+     * Create a draw list of the group at the given origin.
+     *
+     * @param originX the origin x from {@link #getOrigin(int)}
+     * @param originY the origin y
+     * @param originZ the origin z
+     */
+    public ChunkDrawList(int originX, int originY, int originZ) {
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+    }
+
+    /**
+     * Get the origin of the group of a block coordinate: the center of the
+     * group along that axis.
+     *
+     * @param coord the block coordinate
+     * @return the origin
+     */
+    public static int getOrigin(int coord) {
+        return (coord >> GROUP_SHIFT << GROUP_SHIFT) + GROUP_SIZE / 2;
+    }
+
+    /**
+     * Add the quads of a chunk.
+     *
+     * @param baseVertex  the first vertex in the arena
+     * @param vertexCount the count of vertices, 4 per quad
+     */
+    public void add(int baseVertex, int vertexCount) {
+        if (size == counts.length) {
+            counts = Arrays.copyOf(counts, size * 2);
+            baseVertices = Arrays.copyOf(baseVertices, size * 2);
+        }
+        counts[size] = vertexCount / 4 * 6;
+        baseVertices[size] = baseVertex;
+        ++size;
+        maxVertexCount = Math.max(maxVertexCount, vertexCount);
+    }
+
+    public void clear() {
+        size = 0;
+        maxVertexCount = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get the index counts, valid up to {@link #size()}.
+     *
+     * @return the index counts
+     */
+    public int[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Get the base vertices, valid up to {@link #size()}.
+     *
+     * @return the base vertices
+     */
+    public int[] getBaseVertices() {
+        return baseVertices;
+    }
+
+    /**
+     * Get the vertices of the largest chunk, for the size of the
+     * {@link org.overrun.tepv3.client.render.QuadIndexBuffer QuadIndexBuffer}.
+     *
+     * @return the count of vertices
+     */
+    public int getMaxVertexCount() {
+        return maxVertexCount;
+    }
+}
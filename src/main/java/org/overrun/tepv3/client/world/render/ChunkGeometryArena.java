@@ -0,0 +1,222 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world.render;
+
+import org.lwjgl.PointerBuffer;
+import org.overrun.tepv3.client.render.QuadIndexBuffer;
+import org.overrun.tepv3.client.render.VertexFormat;
+import org.overrun.tepv3.client.render.model.Mesh;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.opengl.GL32.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+/**
+ * <h2>The chunk geometry arena</h2>
+ * One vertex buffer holding the meshes of all chunks, sub-allocated by an
+ * {@link ArenaAllocator}, with one vertex array over it. A
+ * {@link ChunkDrawList} of chunks is drawn by one
+ * {@code glMultiDrawElementsBaseVertex} over the {@link QuadIndexBuffer}, so
+ * drawing the chunks takes a few calls instead of a few per chunk.
+ * <p>
+ * The buffer doubles when it is full. Use it on the GL thread only.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ChunkGeometryArena implements AutoCloseable {
+    private final VertexFormat format;
+    private final int vertexSize;
+    private final ArenaAllocator allocator;
+    private final int vao;
+    private int vbo;
+    private IntBuffer counts = memAllocInt(64);
+    private IntBuffer baseVertices = memAllocInt(64);
+    private PointerBuffer indices = memCallocPointer(64);
+
+    /**
+     * Create an arena.
+     *
+     * @param format   the vertex format of the meshes
+     * @param capacity the initial count of vertices
+     */
+    public ChunkGeometryArena(VertexFormat format, int capacity) {
+        this.format = format;
+        vertexSize = format.getVertexSize();
+        allocator = new ArenaAllocator(capacity);
+        vao = glGenVertexArrays();
+        vbo = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ARRAY_BUFFER, (long) capacity * vertexSize, GL_DYNAMIC_DRAW);
+        bindVertexBuffer();
+    }
+
+    private void bindVertexBuffer() {
+        glBindVertexArray(vao);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        format.startDrawing();
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
+    /**
+     * Copy the vertices of a mesh into the arena.
+     *
+     * @param mesh the mesh, not uploaded, in the format of the arena
+     * @return the first vertex in the arena, or {@code -1} if the mesh is empty
+     */
+    public int upload(Mesh mesh) {
+        return upload(mesh, mesh.getVertexCount());
+    }
+
+    /**
+     * Copy the vertices of a mesh into the arena, with room for more.
+     *
+     * @param mesh     the mesh, not uploaded, in the format of the arena
+     * @param capacity the count of vertices to allocate, at least the count
+     *                 of the mesh
+     * @return the first vertex in the arena, or {@code -1} if the mesh is empty
+     */
+    public int upload(Mesh mesh, int capacity) {
+        int vertexCount = mesh.getVertexCount();
+        if (vertexCount == 0)
+            return -1;
+        if (!format.equals(mesh.getFormat()))
+            throw new IllegalArgumentException("Expected format " + format + ", got " + mesh.getFormat());
+        if (capacity < vertexCount)
+            throw new IllegalArgumentException("Capacity " + capacity + " less than " + vertexCount + " vertices");
+        int offset = allocator.allocate(capacity);
+        if (offset < 0) {
+            grow(allocator.getCapacity() + capacity);
+            offset = allocator.allocate(capacity);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) offset * vertexSize, mesh.getRawData());
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        return offset;
+    }
+
+    private void grow(int minCapacity) {
+        int oldCapacity = allocator.getCapacity();
+        int newCapacity = Math.max(oldCapacity * 2, minCapacity);
+        int newVbo = glGenBuffers();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, newVbo);
+        glBufferData(GL_COPY_WRITE_BUFFER, (long) newCapacity * vertexSize, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_COPY_READ_BUFFER, vbo);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, (long) oldCapacity * vertexSize);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+        glDeleteBuffers(vbo);
+        vbo = newVbo;
+        bindVertexBuffer();
+        allocator.grow(newCapacity);
+    }
+
+    /**
+     * Overwrite vertices in place.
+     *
+     * @param vertex the first vertex to write
+     * @param data   the vertices in the format of the arena, from the position
+     *               to the limit
+     */
+    public void write(int vertex, ByteBuffer data) {
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) vertex * vertexSize, data);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Copy vertices within the arena. The ranges must not overlap.
+     *
+     * @param src         the first vertex to copy
+     * @param dst         the first vertex to copy to
+     * @param vertexCount the count of vertices
+     */
+    public void copy(int src, int dst, int vertexCount) {
+        glBindBuffer(GL_COPY_READ_BUFFER, vbo);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, vbo);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER,
+            (long) src * vertexSize,
+            (long) dst * vertexSize,
+            (long) vertexCount * vertexSize);
+        glBindBuffer(GL_COPY_READ_BUFFER, 0);
+        glBindBuffer(GL_COPY_WRITE_BUFFER, 0);
+    }
+
+    /**
+     * Free the vertices of a mesh.
+     *
+     * @param offset      the first vertex from {@link #upload(Mesh)}
+     * @param vertexCount the count of vertices allocated
+     */
+    public void free(int offset, int vertexCount) {
+        allocator.free(offset, vertexCount);
+    }
+
+    /**
+     * Draw the chunks of a list by one call. The program must be bound.
+     *
+     * @param list the list
+     */
+    public void draw(ChunkDrawList list) {
+        int size = list.size();
+        if (size == 0)
+            return;
+        if (counts.capacity() < size) {
+            counts = memRealloc(counts, size * 2);
+            baseVertices = memRealloc(baseVertices, size * 2);
+            memFree(indices);
+            // All chunks start at the first index of the shared quad indices
+            indices = memCallocPointer(size * 2);
+        }
+        counts.clear().put(list.getCounts(), 0, size).flip();
+        baseVertices.clear().put(list.getBaseVertices(), 0, size).flip();
+        indices.position(0).limit(size);
+        glBindVertexArray(vao);
+        QuadIndexBuffer.bind(list.getMaxVertexCount() / 4);
+        glMultiDrawElementsBaseVertex(GL_TRIANGLES, counts, QuadIndexBuffer.getType(), indices, baseVertices);
+        glBindVertexArray(0);
+    }
+
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    public ArenaAllocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public void close() {
+        glDeleteVertexArrays(vao);
+        glDeleteBuffers(vbo);
+        memFree(counts);
+        memFree(baseVertices);
+        memFree(indices);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.client.world.render;
+
+import org.jetbrains.annotations.Nullable;
+import org.overrun.tepv3.client.world.ChunkVisibility;
+import org.overrun.tepv3.client.world.ClientChunk;
+import org.overrun.tepv3.util.Direction;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * <h2>The visibility graph</h2>
+ * Finds the chunks which may be seen from the camera by a breadth-first walk
+ * from the chunk of the camera. A chunk is entered through a face, and left
+ * only through the faces its {@link ChunkVisibility visibility} joins with
+ * that face; the walk never turns back toward the camera, and skips the
+ * chunks out of view. The chunks behind solid ground are never reached.
+ * <p>
+ * It doesn't touch GL, so it can be run on the CPU alone.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class VisibilityGraph {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private ClientChunk[] queue = new ClientChunk[256];
+    /**
+     * The face each queued chunk was entered by in the low 3 bits, and the
+     * directions walked to it above.
+     */
+    private int[] states = new int[256];
+    private int frame;
+    private int visitedCount;
+
+    /**
+     * The chunk lookup by chunk coordinates.
+     */
+    @FunctionalInterface
+    public interface ChunkLookup {
+        @Nullable
+        ClientChunk getChunk(int x, int y, int z);
+    }
+
+    /**
+     * Walk the chunks visible from a chunk.
+     *
+     * @param start   the chunk of the camera
+     * @param lookup  the loaded chunks
+     * @param inView  whether a chunk is in view, as by the frustum
+     * @param visitor called for each visible chunk, the start included, in
+     *                the order of distance in chunks
+     * @return the count of visible chunks
+     */
+    public int walk(ClientChunk start,
+                    ChunkLookup lookup,
+                    Predicate<ClientChunk> inView,
+                    Consumer<ClientChunk> visitor) {
+        ++frame;
+        int head = 0, tail = 0;
+        start.visit(frame);
+        visitor.accept(start);
+        visitedCount = 1;
+        // The start has no entry face: all faces lead out
+        queue[tail] = start;
+        states[tail++] = 7;
+        while (head < tail) {
+            var chunk = queue[head];
+            int state = states[head];
+            queue[head++] = null;
+            int from = state & 7;
+            int walked = state >>> 3;
+            long visibility = chunk.getVisibility();
+            int cx = chunk.x0 >> 4, cy = chunk.y0 >> 4, cz = chunk.z0 >> 4;
+            for (var dir : DIRECTIONS) {
+                int to = dir.getId();
+                if ((walked >>> dir.getOppositeId() & 1) != 0)
+                    continue;
+                if (from != 7 && !ChunkVisibility.isVisible(visibility, from, to))
+                    continue;
+                var next = lookup.getChunk(cx + dir.getOffsetX(), cy + dir.getOffsetY(), cz + dir.getOffsetZ());
+                if (next == null || !inView.test(next) || !next.visit(frame))
+                    continue;
+                visitor.accept(next);
+                ++visitedCount;
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, tail * 2);
+                    states = Arrays.copyOf(states, tail * 2);
+                }
+                queue[tail] = next;
+                states[tail++] = dir.getOppositeId() | (walked | 1 << to) << 3;
+            }
+        }
+        return visitedCount;
+    }
+
+    /**
+     * Get the count of visible chunks of the last walk.
+     *
+     * @return the count
+     */
+    public int getVisitedCount() {
+        return visitedCount;
+    }
+}
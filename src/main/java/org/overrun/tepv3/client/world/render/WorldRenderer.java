@@ -24,12 +24,20 @@
 
 package org.overrun.tepv3.client.world.render;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Vector3dc;
 import org.overrun.tepv3.client.render.Frustum;
 import org.overrun.tepv3.client.render.GameRenderer;
 import org.overrun.tepv3.client.render.RenderSystem;
+import org.overrun.tepv3.client.render.VertexFormats;
 import org.overrun.tepv3.client.tex.SpriteAtlasTextures;
+import org.overrun.tepv3.client.world.ChunkBuilder;
+import org.overrun.tepv3.client.world.ChunkLod;
 import org.overrun.tepv3.client.world.ClientChunk;
-import org.overrun.tepv3.client.world.DirtyChunkSorter;
+import org.overrun.tepv3.client.world.DirtyChunkQueue;
+import org.overrun.tepv3.client.world.RebuildScheduler;
+import org.overrun.tepv3.util.Direction;
 import org.overrun.tepv3.world.IWorldListener;
 import org.overrun.tepv3.world.World;
 import org.overrun.tepv3.world.entity.PlayerEntity;
@@ -43,136 +51,458 @@ import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
  * @since 3.0.1
  */
 public class WorldRenderer implements IWorldListener {
-    public static final int MAX_REBUILDS_PER_FRAME = 8;
+    /**
+     * The initial count of vertices in the geometry arena.
+     */
+    public static final int INITIAL_ARENA_CAPACITY = 1 << 18;
+    /**
+     * The distance in blocks the viewer moves before the levels of detail of
+     * the chunks are chosen again.
+     */
+    public static final double LOD_UPDATE_DISTANCE = 8.0;
     private final World world;
-    private final ClientChunk[] chunks;
-    private final int xChunks;
-    private final int yChunks;
-    private final int zChunks;
+    private final Long2ObjectOpenHashMap<ClientChunk> chunks = new Long2ObjectOpenHashMap<>();
+    private final ChunkBuilder chunkBuilder;
+    private final ChunkGeometryArena arena;
+    /**
+     * The draw lists by draw group, reused each frame.
+     */
+    private final Long2ObjectOpenHashMap<ChunkDrawList> drawLists = new Long2ObjectOpenHashMap<>();
+    private final ChunkCuller culler = new ChunkCuller();
+    private final DirtyChunkQueue dirtyQueue = new DirtyChunkQueue();
+    private final RebuildScheduler rebuildScheduler;
+    private final VisibilityGraph visibilityGraph;
+    private final float lodDistance;
+    /**
+     * Where the levels of detail were chosen from; NaN until the first time.
+     */
+    private double lodX = Double.NaN, lodY = Double.NaN, lodZ = Double.NaN;
+    private int drawCalls;
+    private int visibleChunks;
 
-    public WorldRenderer(World world) {
+    /**
+     * Create a world renderer.
+     *
+     * @param world            the world
+     * @param builderThreads   the parallelism of chunk meshing
+     * @param greedyMeshing    merge the faces of the chunk meshes
+     * @param occlusionCulling skip the chunks hidden behind solid ground
+     * @param rebuildBudget    the time per frame for chunk rebuilds in
+     *                         milliseconds
+     * @param lodDistance      the distance in blocks from which the chunks are
+     *                         meshed at a {@linkplain ChunkLod lower level of
+     *                         detail}, or 0 to mesh all at the full resolution
+     */
+    public WorldRenderer(World world,
+                         int builderThreads,
+                         boolean greedyMeshing,
+                         boolean occlusionCulling,
+                         float rebuildBudget,
+                         float lodDistance) {
         this.world = world;
+        this.lodDistance = lodDistance;
+        visibilityGraph = occlusionCulling ? new VisibilityGraph() : null;
+        chunkBuilder = new ChunkBuilder(builderThreads, greedyMeshing);
+        rebuildScheduler = new RebuildScheduler(chunkBuilder, dirtyQueue, rebuildBudget);
+        arena = new ChunkGeometryArena(greedyMeshing ? VertexFormats.CHUNK_TILED : VertexFormats.CHUNK,
+            INITIAL_ARENA_CAPACITY);
         world.addListener(this);
-        xChunks = world.width / CHUNK_SIZE;
-        yChunks = world.height / CHUNK_SIZE;
-        zChunks = world.depth / CHUNK_SIZE;
-        chunks = new ClientChunk[xChunks * yChunks * zChunks];
-        for (int x = 0; x < xChunks; x++) {
-            for (int y = 0; y < yChunks; y++) {
-                for (int z = 0; z < zChunks; z++) {
-                    int x0 = x * CHUNK_SIZE;
-                    int y0 = y * CHUNK_SIZE;
-                    int z0 = z * CHUNK_SIZE;
-                    int x1 = (x + 1) * CHUNK_SIZE;
-                    int y1 = (y + 1) * CHUNK_SIZE;
-                    int z1 = (z + 1) * CHUNK_SIZE;
-
-                    if (x1 > world.width) {
-                        x1 = world.width;
-                    }
-                    if (y1 > world.height) {
-                        y1 = world.height;
-                    }
-                    if (z1 > world.depth) {
-                        z1 = world.depth;
-                    }
+    }
 
-                    chunks[(x + y * xChunks) * zChunks + z] =
-                        new ClientChunk(world, x0, y0, z0, x1, y1, z1);
-                }
-            }
+    /**
+     * Get the count of chunks waiting for meshing.
+     *
+     * @return the count
+     */
+    public int getDirtyChunkCount() {
+        return dirtyQueue.size();
+    }
+
+    private void markDirty(ClientChunk chunk) {
+        chunk.markDirty();
+        dirtyQueue.add(chunk);
+    }
+
+    private void addToDrawList(ClientChunk chunk) {
+        if (!chunk.hasGeometry())
+            return;
+        ++visibleChunks;
+        long key = World.getChunkPos(chunk.originX >> ChunkDrawList.GROUP_SHIFT,
+            chunk.originY >> ChunkDrawList.GROUP_SHIFT,
+            chunk.originZ >> ChunkDrawList.GROUP_SHIFT);
+        var list = drawLists.get(key);
+        if (list == null) {
+            list = new ChunkDrawList(chunk.originX, chunk.originY, chunk.originZ);
+            drawLists.put(key, list);
         }
+        chunk.addTo(list);
     }
 
-    public ArrayList<ClientChunk> getAllDirtyChunks() {
-        ArrayList<ClientChunk> dirty = null;
-        for (var chunk : chunks) {
-            if (chunk.isDirty()) {
-                if (dirty == null)
-                    dirty = new ArrayList<>();
-                dirty.add(chunk);
+    /**
+     * Find the chunks in the frustum of this frame, for
+     * {@link #updateDirtyChunks} and {@link #render}.
+     *
+     * @param frustum the frustum from {@link Frustum#update()}
+     */
+    public void cull(Frustum frustum) {
+        culler.cull(frustum);
+    }
+
+    /**
+     * Render the chunks in the frustum by the last {@link #cull}, by one draw
+     * call per draw group.
+     * <p>
+     * With occlusion culling, only the chunks the {@link VisibilityGraph}
+     * reaches from the chunk of the camera are drawn; if the camera is out of
+     * the loaded chunks, all chunks in the frustum are.
+     * </p>
+     *
+     * @param camera the camera position; the chunks are drawn relative to it
+     */
+    public void render(Vector3dc camera) {
+        for (var list : drawLists.values()) {
+            list.clear();
+        }
+        visibleChunks = 0;
+        var start = visibilityGraph != null
+            ? getChunk(floorDiv(camera.x(), CHUNK_SIZE), floorDiv(camera.y(), CHUNK_SIZE), floorDiv(camera.z(), CHUNK_SIZE))
+            : null;
+        if (start != null) {
+            visibilityGraph.walk(start,
+                this::getChunk,
+                culler::isVisible,
+                this::addToDrawList);
+        } else {
+            var visible = culler.getVisible();
+            for (int i = 0, count = culler.getVisibleCount(); i < count; i++) {
+                addToDrawList(visible[i]);
             }
         }
-        return dirty;
-    }
 
-    public void render(int layer) {
-        RenderSystem.setProgram(GameRenderer.getPositionColorTexProgram());
-        RenderSystem.getProgram().addSampler("Sampler0", RenderSystem.getShaderTexture(0));
+        RenderSystem.setProgram(chunkBuilder.isGreedy()
+            ? GameRenderer.getChunkTiledProgram()
+            : GameRenderer.getChunkProgram());
+        var program = RenderSystem.getProgram();
+        program.addSampler("Sampler0", RenderSystem.getShaderTexture(0));
         RenderSystem.setShaderTexture(0, SpriteAtlasTextures.BLOCK_ATLAS);
-        var frustum = Frustum.getFrustum();
-        for (var chunk : chunks) {
-            if (frustum.testAab(chunk.box)) {
-                chunk.render(layer);
+        // Move the camera back to the origin, so the group offsets stay small
+        // and precise far from it
+        var modelView = RenderSystem.getModelView();
+        modelView.pushMatrix().translate((float) camera.x(), (float) camera.y(), (float) camera.z());
+        if (program.projMat != null)
+            program.projMat.set(RenderSystem.getProjection());
+        if (program.modelViewMat != null)
+            program.modelViewMat.set(modelView);
+        if (program.colorModulator != null)
+            program.colorModulator.set(RenderSystem.getProgramColor());
+        drawCalls = 0;
+        for (var list : drawLists.values()) {
+            if (list.isEmpty())
+                continue;
+            if (program.chunkOffset != null) {
+                program.chunkOffset.set((float) (list.originX - camera.x()),
+                    (float) (list.originY - camera.y()),
+                    (float) (list.originZ - camera.z()));
             }
+            program.bind();
+            arena.draw(list);
+            ++drawCalls;
         }
+        program.unbind();
+        modelView.popMatrix();
         RenderSystem.setShaderTexture(0, 0);
     }
 
-    public void updateDirtyChunks(PlayerEntity player) {
-        var dirty = getAllDirtyChunks();
-        if (dirty != null) {
-            dirty.sort(new DirtyChunkSorter(player, Frustum.getFrustum()));
-            for (int i = 0; i < MAX_REBUILDS_PER_FRAME && i < dirty.size(); i++) {
-                dirty.get(i).rebuild();
-            }
-        }
+    /**
+     * Get the count of draw calls of the chunks in the last frame.
+     *
+     * @return the count
+     */
+    public int getDrawCalls() {
+        return drawCalls;
     }
 
-    public void markDirty(int x0, int y0, int z0, int x1, int y1, int z1) {
-        x0 /= 16;
-        x1 /= 16;
-        y0 /= 16;
-        y1 /= 16;
-        z0 /= 16;
-        z1 /= 16;
+    /**
+     * Get the count of chunks drawn in the last frame.
+     *
+     * @return the count
+     */
+    public int getVisibleChunks() {
+        return visibleChunks;
+    }
 
-        if (x0 < 0) {
-            x0 = 0;
-        }
-        if (y0 < 0) {
-            y0 = 0;
+    @Nullable
+    public ClientChunk getChunk(int x, int y, int z) {
+        return chunks.get(World.getChunkPos(x, y, z));
+    }
+
+    private static int floorDiv(double pos, int size) {
+        return Math.floorDiv((int) Math.floor(pos), size);
+    }
+
+    public ChunkCuller getCuller() {
+        return culler;
+    }
+
+    public ChunkGeometryArena getArena() {
+        return arena;
+    }
+
+    /**
+     * Upload the chunks meshed since the last frame, then schedule the most
+     * urgent dirty chunks for meshing, within the rebuild budget. The levels
+     * of detail are chosen again first if the player moved far enough.
+     *
+     * @param player the player to sort the chunks by
+     * @see RebuildScheduler
+     */
+    public void updateDirtyChunks(PlayerEntity player) {
+        updateLevels(player.position.x, player.position.y, player.position.z);
+        rebuildScheduler.update(this::hasLight,
+            culler,
+            player.position.x,
+            player.position.y,
+            player.position.z);
+    }
+
+    /**
+     * Choose the level of detail of each chunk by its distance, once the
+     * viewer moved {@link #LOD_UPDATE_DISTANCE} since the last time. The
+     * chunks changing level and their face neighbours are marked dirty, as
+     * the seams between them move.
+     *
+     * @param x the viewer x
+     * @param y the viewer y
+     * @param z the viewer z
+     */
+    public void updateLevels(double x, double y, double z) {
+        if (lodDistance <= 0)
+            return;
+        double dx = x - lodX, dy = y - lodY, dz = z - lodZ;
+        // Always on the first time, as NaN fails the comparison
+        if (dx * dx + dy * dy + dz * dz < LOD_UPDATE_DISTANCE * LOD_UPDATE_DISTANCE)
+            return;
+        lodX = x;
+        lodY = y;
+        lodZ = z;
+        var changed = new ArrayList<ClientChunk>();
+        for (var chunk : chunks.values()) {
+            int level = ChunkLod.getLevel(chunk.getLevel(), chunk.distanceToSqr(x, y, z), lodDistance);
+            if (level != chunk.getLevel()) {
+                chunk.setLevel(level);
+                markDirty(chunk);
+                changed.add(chunk);
+            }
         }
-        if (z0 < 0) {
-            z0 = 0;
+        for (var chunk : changed) {
+            updateSeams(chunk);
         }
-        if (x1 >= xChunks) {
-            x1 = xChunks - 1;
+    }
+
+    /**
+     * Find the seams of a chunk and of its face neighbours again, and mark the
+     * ones whose seams changed dirty.
+     */
+    private void updateSeams(ClientChunk chunk) {
+        int cx = chunk.x0 >> 4, cy = chunk.y0 >> 4, cz = chunk.z0 >> 4;
+        updateSeams(cx, cy, cz);
+        for (var dir : Direction.values()) {
+            updateSeams(cx + dir.getOffsetX(), cy + dir.getOffsetY(), cz + dir.getOffsetZ());
         }
-        if (y1 >= yChunks) {
-            y1 = yChunks - 1;
+    }
+
+    private void updateSeams(int cx, int cy, int cz) {
+        var chunk = getChunk(cx, cy, cz);
+        if (chunk == null)
+            return;
+        int seams = 0;
+        for (var dir : Direction.values()) {
+            var neighbour = getChunk(cx + dir.getOffsetX(), cy + dir.getOffsetY(), cz + dir.getOffsetZ());
+            // A missing chunk reads as air, so the faces towards it stay anyway
+            if (neighbour != null && neighbour.getLevel() != chunk.getLevel())
+                seams |= 1 << dir.getId();
         }
-        if (z1 >= zChunks) {
-            z1 = zChunks - 1;
+        if (seams != chunk.getSeams()) {
+            chunk.setSeams(seams);
+            markDirty(chunk);
         }
+    }
+
+    public void markDirty(int x0, int y0, int z0, int x1, int y1, int z1) {
+        x0 >>= 4;
+        x1 >>= 4;
+        y0 >>= 4;
+        y1 >>= 4;
+        z0 >>= 4;
+        z1 >>= 4;
 
         for (int x = x0; x <= x1; ++x) {
             for (int y = y0; y <= y1; ++y) {
                 for (int z = z0; z <= z1; ++z) {
-                    chunks[(x + y * xChunks) * zChunks + z].markDirty();
+                    var chunk = chunks.get(World.getChunkPos(x, y, z));
+                    if (chunk != null) {
+                        markDirty(chunk);
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Mark the chunks of a box of changed blocks dirty, and the chunks across
+     * the faces of the box. The chunks only touching it by an edge or a corner
+     * are left, as a mesh reads its face neighbours only.
+     *
+     * @param x0 the min x
+     * @param y0 the min y
+     * @param z0 the min z
+     * @param x1 the max x, inclusive
+     * @param y1 the max y, inclusive
+     * @param z1 the max z, inclusive
+     */
+    public void markFacesDirty(int x0, int y0, int z0, int x1, int y1, int z1) {
+        markDirty(x0, y0, z0, x1, y1, z1);
+        // Each slab is in the chunks of the box unless the box is at a border
+        if ((x0 & 15) == 0) markDirty(x0 - 1, y0, z0, x0 - 1, y1, z1);
+        if ((x1 & 15) == 15) markDirty(x1 + 1, y0, z0, x1 + 1, y1, z1);
+        if ((y0 & 15) == 0) markDirty(x0, y0 - 1, z0, x1, y0 - 1, z1);
+        if ((y1 & 15) == 15) markDirty(x0, y1 + 1, z0, x1, y1 + 1, z1);
+        if ((z0 & 15) == 0) markDirty(x0, y0, z0 - 1, x1, y1, z0 - 1);
+        if ((z1 & 15) == 15) markDirty(x0, y0, z1 + 1, x1, y1, z1 + 1);
+    }
+
+    /**
+     * Patch the meshes of the chunks a changed block shows in, and mark the
+     * ones which can't be patched dirty.
+     *
+     * @param x the block x
+     * @param y the block y
+     * @param z the block z
+     * @see ClientChunk#patch(int, int, int, boolean)
+     */
+    public void patchBlock(int x, int y, int z) {
+        int cx = x >> 4, cy = y >> 4, cz = z >> 4;
+        patchChunk(cx, cy, cz, x, y, z);
+        // The neighbours across the faces the block is on
+        int lx = x & 15, ly = y & 15, lz = z & 15;
+        if (lx == 0) patchChunk(cx - 1, cy, cz, x, y, z);
+        if (lx == 15) patchChunk(cx + 1, cy, cz, x, y, z);
+        if (ly == 0) patchChunk(cx, cy - 1, cz, x, y, z);
+        if (ly == 15) patchChunk(cx, cy + 1, cz, x, y, z);
+        if (lz == 0) patchChunk(cx, cy, cz - 1, x, y, z);
+        if (lz == 15) patchChunk(cx, cy, cz + 1, x, y, z);
+    }
+
+    private void patchChunk(int cx, int cy, int cz, int x, int y, int z) {
+        var chunk = getChunk(cx, cy, cz);
+        if (chunk != null && !chunk.patch(x, y, z, chunkBuilder.isGreedy()))
+            markDirty(chunk);
+    }
+
     @Override
     public void blockChanged(int x, int y, int z) {
-        markDirty(x - 1, y - 1, z - 1, x + 1, y + 1, z + 1);
+        patchBlock(x, y, z);
+    }
+
+    @Override
+    public void blocksChanged(int x0, int y0, int z0, int x1, int y1, int z1) {
+        if (x0 == x1 && y0 == y1 && z0 == z1) {
+            patchBlock(x0, y0, z0);
+        } else {
+            markFacesDirty(x0, y0, z0, x1, y1, z1);
+        }
     }
 
     @Override
     public void lightColumnChanged(int x, int z, int y0, int y1) {
-        markDirty(x - 1, y0 - 1, z - 1, x + 1, y1 + 1, z + 1);
+        // The light engine publishes the changed chunks in lightChanged
+    }
+
+    @Override
+    public void lightChanged(int x, int y, int z, int sides) {
+        var chunk = getChunk(x, y, z);
+        if (chunk != null)
+            markDirty(chunk);
+        // The neighbours only see the border layer facing them
+        for (var dir : Direction.values()) {
+            if ((sides & 1 << dir.getId()) == 0)
+                continue;
+            var neighbour = getChunk(x + dir.getOffsetX(), y + dir.getOffsetY(), z + dir.getOffsetZ());
+            if (neighbour != null)
+                markDirty(neighbour);
+        }
+    }
+
+    /**
+     * Wait for the light of a new chunk before building it, so it isn't built
+     * twice.
+     */
+    private boolean hasLight(ClientChunk chunk) {
+        var worldChunk = world.getChunk(chunk.x0 >> 4, chunk.y0 >> 4, chunk.z0 >> 4);
+        return worldChunk == null || worldChunk.hasLight();
     }
 
     @Override
     public void allChanged() {
-        markDirty(0, 0, 0, world.width, world.height, world.depth);
+        for (var chunk : chunks.values()) {
+            markDirty(chunk);
+        }
+    }
+
+    @Override
+    public void chunkLoaded(int x, int y, int z) {
+        int x0 = x * CHUNK_SIZE;
+        int y0 = y * CHUNK_SIZE;
+        int z0 = z * CHUNK_SIZE;
+        int y1 = y0 + CHUNK_SIZE;
+        if (y1 > world.height) {
+            y1 = world.height;
+        }
+        var chunk = new ClientChunk(world, arena, x0, y0, z0, x0 + CHUNK_SIZE, y1, z0 + CHUNK_SIZE);
+        var old = chunks.put(World.getChunkPos(x, y, z), chunk);
+        if (old != null) {
+            culler.remove(old);
+            dirtyQueue.remove(old);
+            old.free();
+        }
+        culler.add(chunk);
+        dirtyQueue.add(chunk);
+        if (!Double.isNaN(lodX)) {
+            chunk.setLevel(ChunkLod.getLevel(0, chunk.distanceToSqr(lodX, lodY, lodZ), lodDistance));
+            updateSeams(chunk);
+        }
+        // The faces towards the new chunk are culled now
+        markFacesDirty(x0, y0, z0, x0 + CHUNK_SIZE - 1, y0 + CHUNK_SIZE - 1, z0 + CHUNK_SIZE - 1);
+    }
+
+    @Override
+    public void chunkUnloaded(int x, int y, int z) {
+        var chunk = chunks.remove(World.getChunkPos(x, y, z));
+        if (chunk != null) {
+            culler.remove(chunk);
+            dirtyQueue.remove(chunk);
+            chunk.free();
+        }
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    public ChunkBuilder getChunkBuilder() {
+        return chunkBuilder;
+    }
+
+    public RebuildScheduler getRebuildScheduler() {
+        return rebuildScheduler;
     }
 
     public void free() {
-        for (var chunk : chunks) {
+        chunkBuilder.close();
+        for (var chunk : chunks.values()) {
             chunk.free();
         }
+        chunks.clear();
+        arena.close();
     }
 }
@@ -83,7 +83,8 @@ public class BlockPos {
     /**
      * Get the long value from a position.
      * <p>
-     * The pos must be smaller than 2097152 (exclusive).
+     * The y and z must be in [-1048576, 1048576), the x must be in
+     * [-2097152, 2097152).
      * </p>
      *
      * @param x The pos x
@@ -92,8 +93,8 @@ public class BlockPos {
      * @return The long value
      */
     public static long getLongValue(int x, int y, int z) {
-        long l = z;
-        l |= (long) y << 21;
+        long l = z & 0x1FFFFFL;
+        l |= (y & 0x1FFFFFL) << 21;
         l |= (long) x << 42;
         return l;
     }
@@ -103,11 +104,11 @@ public class BlockPos {
     }
 
     public static int yFromLong(long l) {
-        return (int) (l >> 21L << 42L >> 42L);
+        return (int) (l << 22L >> 43L);
     }
 
     public static int zFromLong(long l) {
-        return (int) (l << 42L >> 42L);
+        return (int) (l << 43L >> 43L);
     }
 
     public static BlockPos fromLong(long l) {
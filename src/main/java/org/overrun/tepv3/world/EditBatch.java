@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.light.LightEngine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The edit batch</h2>
+ * Collects block changes made through {@link World#edit}. The blocks are set
+ * at once, so the batch reads its own changes; the lightmap, the light
+ * engine and the listeners are updated once when the batch ends.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class EditBatch {
+    private final World world;
+    /**
+     * The highest changed y per block column, -1 if none, keyed by the
+     * chunk column.
+     */
+    final Long2ObjectOpenHashMap<int[]> columnTops = new Long2ObjectOpenHashMap<>();
+    /**
+     * The bounds of the changed blocks per chunk: min x, y, z, max x, y, z.
+     */
+    final Long2ObjectOpenHashMap<int[]> chunkRegions = new Long2ObjectOpenHashMap<>();
+    /**
+     * The changes packed by {@link LightEngine#pack} with the luminance as the level.
+     */
+    final LongArrayList changes = new LongArrayList();
+    final BitSet opaque = new BitSet();
+
+    EditBatch(World world) {
+        this.world = world;
+    }
+
+    /**
+     * Set a block.
+     *
+     * @param x     the block x
+     * @param y     the block y
+     * @param z     the block z
+     * @param block the block
+     * @return {@code true} if the block changed
+     */
+    public boolean set(int x, int y, int z, Block block) {
+        if (!world.isInBorder(x, y, z))
+            return false;
+        var chunk = world.getChunk(x >> 4, y >> 4, z >> 4);
+        if (chunk == null || chunk.setBlockState(x & 15, y & 15, z & 15, block) == block)
+            return false;
+
+        var tops = columnTops.get(World.getChunkPos(x >> 4, 0, z >> 4));
+        if (tops == null) {
+            tops = new int[CHUNK_SIZE * CHUNK_SIZE];
+            Arrays.fill(tops, -1);
+            columnTops.put(World.getChunkPos(x >> 4, 0, z >> 4), tops);
+        }
+        int i = (x & 15) + (z & 15) * CHUNK_SIZE;
+        tops[i] = Math.max(tops[i], y);
+
+        long chunkPos = chunk.getPos();
+        var region = chunkRegions.get(chunkPos);
+        if (region == null) {
+            chunkRegions.put(chunkPos, new int[]{x, y, z, x, y, z});
+        } else {
+            region[0] = Math.min(region[0], x);
+            region[1] = Math.min(region[1], y);
+            region[2] = Math.min(region[2], z);
+            region[3] = Math.max(region[3], x);
+            region[4] = Math.max(region[4], y);
+            region[5] = Math.max(region[5], z);
+        }
+
+        if (block.isOpaque())
+            opaque.set(changes.size());
+        changes.add(LightEngine.pack(x, y, z, block.getLuminance()));
+        return true;
+    }
+
+    /**
+     * Fill a box with a block.
+     *
+     * @param x0    the min x
+     * @param y0    the min y
+     * @param z0    the min z
+     * @param x1    the max x, inclusive
+     * @param y1    the max y, inclusive
+     * @param z1    the max z, inclusive
+     * @param block the block
+     * @return the count of changed blocks
+     */
+    public int fill(int x0, int y0, int z0, int x1, int y1, int z1, Block block) {
+        int count = 0;
+        for (int y = y0; y <= y1; y++) {
+            for (int z = z0; z <= z1; z++) {
+                for (int x = x0; x <= x1; x++) {
+                    if (set(x, y, z, block))
+                        ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    public Block get(int x, int y, int z) {
+        return world.getBlockState(x, y, z);
+    }
+
+    /**
+     * Get the count of changed blocks so far.
+     *
+     * @return the count
+     */
+    public int getChangeCount() {
+        return changes.size();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world;
+
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.light.LightEngine;
+
+import static java.lang.Math.max;
+
+/**
+ * <h2>The block view</h2>
+ * Read access to blocks and light, used by the block rendering. It is either
+ * the {@link World} or a snapshot of a part of it.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public interface IBlockView {
+    Block getBlockState(int x, int y, int z);
+
+    /**
+     * Get the sky light.
+     *
+     * @param x the block x
+     * @param y the block y
+     * @param z the block z
+     * @return the light level, 0 to 15
+     */
+    int getSkyLight(int x, int y, int z);
+
+    /**
+     * Get the block light.
+     *
+     * @param x the block x
+     * @param y the block y
+     * @param z the block z
+     * @return the light level, 0 to 15
+     */
+    int getBlockLight(int x, int y, int z);
+
+    default int getLight(int x, int y, int z) {
+        return max(getSkyLight(x, y, z), getBlockLight(x, y, z));
+    }
+
+    /**
+     * Get the color multiplier of the light at a block.
+     *
+     * @param x the block x
+     * @param y the block y
+     * @param z the block z
+     * @return the brightness, 0.2 to 1
+     */
+    default float getBrightness(int x, int y, int z) {
+        return LightEngine.getBrightness(getLight(x, y, z));
+    }
+
+    /**
+     * Check whether a block sees the sky directly.
+     *
+     * @param x the block x
+     * @param y the block y
+     * @param z the block z
+     * @return {@code true} if the sky light is full
+     */
+    default boolean isLit(int x, int y, int z) {
+        return getSkyLight(x, y, z) == LightEngine.MAX_LIGHT;
+    }
+
+    default boolean isSolidBlock(int x, int y, int z) {
+        return getBlockState(x, y, z).isSolid();
+    }
+}
@@ -29,14 +29,70 @@ package org.overrun.tepv3.world;
  * @since 3.0.1
  */
 public interface IWorldListener {
+    /**
+     * Send {@link #blockChanged} for every changed block.
+     */
     int NOTIFY_NEIGHBOR = 1;
+    /**
+     * Send {@link #lightColumnChanged} for every changed lightmap column.
+     */
     int NOTIFY_COLUMN = 1 << 1;
+    /**
+     * Send {@link #blocksChanged} once per changed chunk.
+     */
     int NOTIFY_CHUNK = 1 << 2;
-    int NOTIFY_ALL = 1 << 3;
+    /**
+     * The notifications of a single edit. It leaves out {@link #NOTIFY_CHUNK},
+     * which tells the same change again as a batch.
+     */
+    int NOTIFY_ALL = NOTIFY_NEIGHBOR | NOTIFY_COLUMN;
 
     void blockChanged(int x, int y, int z);
 
+    /**
+     * Called once per chunk after a batch of changes, with the bounds of the
+     * changed blocks in that chunk.
+     *
+     * @param x0 the min x
+     * @param y0 the min y
+     * @param z0 the min z
+     * @param x1 the max x, inclusive
+     * @param y1 the max y, inclusive
+     * @param z1 the max z, inclusive
+     */
+    void blocksChanged(int x0, int y0, int z0, int x1, int y1, int z1);
+
     void lightColumnChanged(int x, int z, int y0, int y1);
 
     void allChanged();
+
+    /**
+     * Called after the light engine published the light of a chunk.
+     *
+     * @param x     the chunk x
+     * @param y     the chunk y
+     * @param z     the chunk z
+     * @param sides the sides whose border layer changed, bit
+     *              {@link org.overrun.tepv3.util.Direction#getId()} for each;
+     *              only the neighbours on these sides see the change
+     */
+    void lightChanged(int x, int y, int z, int sides);
+
+    /**
+     * Called after a chunk was loaded.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     */
+    void chunkLoaded(int x, int y, int z);
+
+    /**
+     * Called after a chunk was unloaded.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     */
+    void chunkUnloaded(int x, int y, int z);
 }
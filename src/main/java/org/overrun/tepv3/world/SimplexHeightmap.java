@@ -24,46 +24,55 @@
 
 package org.overrun.tepv3.world;
 
-import org.joml.SimplexNoise;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+import org.overrun.tepv3.world.gen.OctaveSimplexNoise;
 
 /**
  * @author squid233
  * @since 3.0.1
  */
 public class SimplexHeightmap {
-    private static float sumOctave(int numIterators,
-                                   float x,
-                                   float y,
-                                   float z,
-                                   float persistence,
-                                   float scale,
-                                   float low,
-                                   float high) {
-        float maxAmp = 0, amp = 1;
-        float freq = scale;
-        float noise = 0;
-        for (int i = 0; i < numIterators; i++) {
-            noise += SimplexNoise.noise(x * freq, y, z * freq) * amp;
-            maxAmp += amp;
-            amp *= persistence;
-            freq *= 2;
-        }
-        noise /= maxAmp;
-        noise = noise * (high - low) / 2.0f + (high + low) / 2.0f;
-        return noise;
+    public static final int OCTAVES = 16;
+    public static final float PERSISTENCE = .5f;
+
+    public static OctaveSimplexNoise createNoise(long seed) {
+        return new OctaveSimplexNoise(seed, OCTAVES, PERSISTENCE);
     }
 
     public static int[] generate(long seed,
                                  int w,
                                  int h,
                                  int d) {
+        return generate(createNoise(seed), NoiseSampling.FULL, 0, 0, w, d, h, 2.0f / (w + d));
+    }
+
+    /**
+     * Generate the heightmap of a {@code w*d} patch starting at {@code (x0, z0)}.
+     *
+     * @param noise    the terrain noise
+     * @param sampling the noise sampling quality
+     * @param x0       the start x
+     * @param z0       the start z
+     * @param w        the patch width
+     * @param d        the patch depth
+     * @param h        the max height
+     * @param scale    the base frequency
+     * @return the heights, indexed by {@code x + z * w}
+     */
+    public static int[] generate(OctaveSimplexNoise noise,
+                                 NoiseSampling sampling,
+                                 int x0,
+                                 int z0,
+                                 int w,
+                                 int d,
+                                 int h,
+                                 float scale) {
         final var arr = new int[w * d];
-        final var invY = 1.0f / seed;
-        final var scale = 2.0f / (w + d);
-        for (int x = 0; x < w; x++) {
-            for (int z = 0; z < d; z++) {
-                arr[x + z * w] = (int) sumOctave(16, x, invY, z, .5f, scale, 0, h);
-            }
+        final var buf = new float[w * d];
+        sampling.sample(noise, buf, x0, z0, w, d, scale);
+        final float half = h / 2.0f;
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = (int) (buf[i] * half + half);
         }
         return arr;
     }
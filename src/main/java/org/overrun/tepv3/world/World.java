@@ -24,86 +24,292 @@
 
 package org.overrun.tepv3.world;
 
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.overrun.tepv3.Configs;
+import org.overrun.tepv3.util.BlockPos;
 import org.overrun.tepv3.world.block.Block;
 import org.overrun.tepv3.world.block.Blocks;
 import org.overrun.tepv3.client.phys.AABBox;
+import org.overrun.tepv3.world.chunk.WorldChunk;
+import org.overrun.tepv3.world.gen.NoiseSampling;
+import org.overrun.tepv3.world.gen.ProtoColumn;
+import org.overrun.tepv3.world.gen.TerrainGenerator;
+import org.overrun.tepv3.world.light.LightEngine;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Random;
+import java.util.function.Consumer;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+import static org.overrun.tepv3.world.IWorldListener.*;
 
 /**
+ * The world is paged into {@link WorldChunk chunks}, which are loaded as whole
+ * columns around a position by {@link #updateLoadedChunks(int, int, int)}.
+ * The world is unbounded horizontally up to the range of the packed chunk
+ * position, and is {@link #height} blocks high.
+ *
  * @author squid233
  * @since 3.0.1
  */
-public class World {
+public class World implements IBlockView, AutoCloseable {
+    /**
+     * The horizontal limit of block coordinates, bounded by the packed chunk position.
+     */
+    public static final int MAX_HORIZONTAL = CHUNK_SIZE << 20;
     public final long seed;
-    public final int width, height, depth;
-    private final Block[] blocks;
-    private final int[] lightmap;
+    /**
+     * The size of the spawn area. It also scales the terrain.
+     */
+    public final int width, depth;
+    /**
+     * The build height.
+     */
+    public final int height;
+    private final int ySections;
+    private final TerrainGenerator generator;
+    private final LightEngine lightEngine;
+    private final Long2ObjectOpenHashMap<WorldChunk> chunks = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<int[]> lightmaps = new Long2ObjectOpenHashMap<>();
     private final ArrayList<IWorldListener> worldListeners = new ArrayList<>();
     private final Random random;
 
     public World(long seed,
                  int width,
                  int height,
-                 int depth) {
+                 int depth,
+                 int genThreads,
+                 NoiseSampling sampling) {
         this.seed = seed;
         this.width = width;
         this.height = height;
         this.depth = depth;
-        blocks = new Block[width * height * depth];
-        lightmap = new int[width * depth];
+        ySections = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        generator = new TerrainGenerator(this, genThreads, sampling);
+        lightEngine = new LightEngine(height);
         random = new Random(seed);
-        generateTerrain();
-        generateLightmap(0, 0, width, depth);
-    }
-
-    private void generateTerrain() {
-        int[] hm = SimplexHeightmap.generate(seed, width, height, depth);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                for (int z = 0; z < depth; z++) {
-                    int i = (y * depth + z) * width + x;
-                    if (y == 0) {
-                        blocks[i] = Blocks.BEDROCK;
-                        continue;
-                    }
-                    Block block = Blocks.AIR;
-                    var h = hm[x + z * width];
-                    if (h - 1 == y) {
-                        block = Blocks.GRASS_BLOCK;
-                    } else if (h - y > 5) {
-                        block = Blocks.STONE;
-                    } else if (h - y <= 5 && y < h) {
-                        block = Blocks.DIRT;
+    }
+
+    public World(long seed,
+                 int width,
+                 int height,
+                 int depth) {
+        this(seed, width, height, depth, Configs.worldGenThreads, NoiseSampling.FULL);
+    }
+
+    /**
+     * Request every chunk column within {@code radius} columns of a block
+     * position, load the ones the generator has finished, and unload the
+     * columns farther than {@code radius + 1}.
+     * <p>
+     * The nearest columns are requested first. This doesn't wait for the
+     * generator; see {@link #loadChunksAround(int, int, int)}.
+     * </p>
+     *
+     * @param x      the block x
+     * @param z      the block z
+     * @param radius the radius in chunks
+     */
+    public void updateLoadedChunks(int x, int z, int radius) {
+        int cx = x >> 4;
+        int cz = z >> 4;
+        unloadFarColumns(cx, cz, radius);
+        // Keep the neighbours that the features of the edge columns read
+        generator.retain(cx, cz, radius + 2);
+        for (int r = 0; r <= radius; r++) {
+            for (int i = cx - r; i <= cx + r; i++) {
+                for (int j = cz - r; j <= cz + r; j++) {
+                    if (Math.max(Math.abs(i - cx), Math.abs(j - cz)) == r
+                        && isInBorder(i << 4, 0, j << 4)
+                        && !isColumnLoaded(i, j)) {
+                        generator.request(i, j);
                     }
-                    blocks[i] = block;
                 }
             }
         }
+        generator.update(this::addColumn);
+    }
+
+    /**
+     * Load every chunk column within {@code radius} columns of a block
+     * position, waiting for the generator.
+     *
+     * @param x      the block x
+     * @param z      the block z
+     * @param radius the radius in chunks
+     */
+    public void loadChunksAround(int x, int z, int radius) {
+        int cx = x >> 4;
+        int cz = z >> 4;
+        unloadFarColumns(cx, cz, radius);
+        var loading = new LongArrayList();
+        for (int i = cx - radius; i <= cx + radius; i++) {
+            for (int j = cz - radius; j <= cz + radius; j++) {
+                if (isInBorder(i << 4, 0, j << 4) && !isColumnLoaded(i, j)) {
+                    loading.add(getColumnPos(i, j));
+                }
+            }
+        }
+        if (loading.isEmpty())
+            return;
+        for (var column : generator.generateColumns(loading.toLongArray())) {
+            addColumn(column);
+        }
+    }
+
+    private void unloadFarColumns(int cx, int cz, int radius) {
+        var unloading = new LongArrayList();
+        for (long key : lightmaps.keySet()) {
+            if (Math.abs(BlockPos.xFromLong(key) - cx) > radius + 1
+                || Math.abs(BlockPos.zFromLong(key) - cz) > radius + 1) {
+                unloading.add(key);
+            }
+        }
+        for (int i = 0; i < unloading.size(); i++) {
+            long key = unloading.getLong(i);
+            unloadColumn(BlockPos.xFromLong(key), BlockPos.zFromLong(key));
+        }
+    }
+
+    /**
+     * Generate and load a chunk column.
+     *
+     * @param x the chunk x
+     * @param z the chunk z
+     */
+    public void loadColumn(int x, int z) {
+        if (!isColumnLoaded(x, z))
+            addColumn(generator.generateColumns(new long[]{getColumnPos(x, z)})[0]);
+    }
+
+    private void addColumn(ProtoColumn column) {
+        int x = column.x;
+        int z = column.z;
+        if (isColumnLoaded(x, z))
+            return;
+        for (var chunk : column.getChunks()) {
+            chunks.put(chunk.getPos(), chunk);
+        }
+        lightmaps.put(getColumnPos(x, z), column.getLightmap());
+        lightEngine.addColumn(x, z, column.getChunks());
+        for (int y = 0; y < ySections; y++) {
+            for (var listener : worldListeners)
+                listener.chunkLoaded(x, y, z);
+        }
+    }
+
+    /**
+     * Unload a chunk column.
+     *
+     * @param x the chunk x
+     * @param z the chunk z
+     */
+    public void unloadColumn(int x, int z) {
+        if (lightmaps.remove(getColumnPos(x, z)) == null)
+            return;
+        lightEngine.removeColumn(x, z);
+        for (int y = 0; y < ySections; y++) {
+            chunks.remove(getChunkPos(x, y, z));
+            for (var listener : worldListeners)
+                listener.chunkUnloaded(x, y, z);
+        }
+    }
+
+    public boolean isColumnLoaded(int x, int z) {
+        return lightmaps.containsKey(getColumnPos(x, z));
     }
 
+    /**
+     * Rescan the lightmap of a block area from the build height down.
+     *
+     * @param x0 the start x
+     * @param z0 the start z
+     * @param w  the width
+     * @param d  the depth
+     */
     public void generateLightmap(int x0,
                                  int z0,
                                  int w,
                                  int d) {
         for (int x = x0; x < x0 + w; x++) {
             for (int z = z0; z < z0 + d; z++) {
-                int oldMap = lightmap[x + z * width];
-                int y = height - 1;
-                while (y > 0 && !isLightBlocker(x, y, z)) --y;
-                lightmap[x + z * width] = y;
-                if (oldMap != y) {
-                    int yl0 = min(oldMap, y);
-                    int yl1 = max(oldMap, y);
-                    for (var listener : worldListeners)
-                        listener.lightColumnChanged(x, z, yl0, yl1);
-                }
+                var lightmap = lightmaps.get(getColumnPos(x >> 4, z >> 4));
+                if (lightmap == null)
+                    continue;
+                int i = (x & 15) + (z & 15) * CHUNK_SIZE;
+                setLightmap(lightmap, i, x, z, findLightBlocker(x, height - 1, z), true);
+            }
+        }
+    }
+
+    /**
+     * Update the lightmap for a changed block.
+     * <p>
+     * A blocker placed above the top, or anything changed below it, is O(1);
+     * only removing the top blocker scans down, and only from there.
+     * </p>
+     *
+     * @param x     the block x
+     * @param y     the block y
+     * @param z     the block z
+     * @param block the new block
+     */
+    private void updateLightmap(int x, int y, int z, Block block, boolean notify) {
+        var lightmap = lightmaps.get(getColumnPos(x >> 4, z >> 4));
+        if (lightmap == null)
+            return;
+        int i = (x & 15) + (z & 15) * CHUNK_SIZE;
+        int top = lightmap[i];
+        if (y > top) {
+            if (block.isOpaque())
+                setLightmap(lightmap, i, x, z, y, notify);
+        } else if (y == top && !block.isOpaque()) {
+            setLightmap(lightmap, i, x, z, findLightBlocker(x, y - 1, z), notify);
+        }
+    }
+
+    private void setLightmap(int[] lightmap, int i, int x, int z, int y, boolean notify) {
+        int oldMap = lightmap[i];
+        if (oldMap != y) {
+            lightmap[i] = y;
+            if (!notify)
+                return;
+            int yl0 = min(oldMap, y);
+            int yl1 = max(oldMap, y);
+            for (var listener : worldListeners)
+                listener.lightColumnChanged(x, z, yl0, yl1);
+        }
+    }
+
+    /**
+     * Find the highest light blocker at or below a block, walking the loaded
+     * sections directly.
+     *
+     * @param x the block x
+     * @param y the block y to start from
+     * @param z the block z
+     * @return the y of the blocker, or 0 if there is none above the bottom
+     */
+    private int findLightBlocker(int x, int y, int z) {
+        int lx = x & 15;
+        int lz = z & 15;
+        while (y > 0) {
+            var chunk = getChunk(x >> 4, y >> 4, z >> 4);
+            int sectionBottom = y & ~15;
+            if (chunk == null || chunk.isEmpty()) {
+                y = sectionBottom - 1;
+                continue;
+            }
+            for (; y >= sectionBottom && y > 0; y--) {
+                if (chunk.getBlockState(lx, y & 15, lz).isOpaque())
+                    return y;
             }
         }
+        return 0;
     }
 
     public void addListener(IWorldListener listener) {
@@ -117,31 +323,19 @@ public class World {
 
     public ArrayList<AABBox> getCubes(AABBox origin) {
         var boxes = new ArrayList<AABBox>();
-        int x0 = (int) origin.min.x;
-        int x1 = (int) (origin.max.x + 1.0);
+        int x0 = (int) Math.floor(origin.min.x);
+        int x1 = (int) Math.floor(origin.max.x + 1.0);
         int y0 = (int) origin.min.y;
         int y1 = (int) (origin.max.y + 1.0);
-        int z0 = (int) origin.min.z;
-        int z1 = (int) (origin.max.z + 1.0);
+        int z0 = (int) Math.floor(origin.min.z);
+        int z1 = (int) Math.floor(origin.max.z + 1.0);
 
-        if (x0 < 0) {
-            x0 = 0;
-        }
         if (y0 < 0) {
             y0 = 0;
         }
-        if (z0 < 0) {
-            z0 = 0;
-        }
-        if (x1 > width) {
-            x1 = width;
-        }
         if (y1 > height) {
             y1 = height;
         }
-        if (z1 > depth) {
-            z1 = depth;
-        }
         for (int x = x0; x < x1; x++) {
             for (int y = y0; y < y1; y++) {
                 for (int z = z0; z < z1; z++) {
@@ -161,52 +355,255 @@ public class World {
     }
 
     public boolean isInBorder(int x, int y, int z) {
-        return x >= 0 && y >= 0 && z >= 0 && x < width && y < height && z < depth;
+        return x >= -MAX_HORIZONTAL && y >= 0 && z >= -MAX_HORIZONTAL
+            && x < MAX_HORIZONTAL && y < height && z < MAX_HORIZONTAL;
+    }
+
+    public static long getChunkPos(int x, int y, int z) {
+        return BlockPos.getLongValue(x, y, z);
+    }
+
+    private static long getColumnPos(int x, int z) {
+        return BlockPos.getLongValue(x, 0, z);
+    }
+
+    /**
+     * Get a loaded chunk.
+     *
+     * @param x the chunk x
+     * @param y the chunk y
+     * @param z the chunk z
+     * @return the chunk, or {@code null} if not loaded
+     */
+    public WorldChunk getChunk(int x, int y, int z) {
+        return chunks.get(getChunkPos(x, y, z));
     }
 
+    public Collection<WorldChunk> getLoadedChunks() {
+        return chunks.values();
+    }
+
+    /**
+     * Set a block. The light is always updated; the flags choose which
+     * listener events are sent.
+     *
+     * @param block the block
+     * @param x     the block x
+     * @param y     the block y
+     * @param z     the block z
+     * @param flags the {@code NOTIFY_*} flags of {@link IWorldListener}
+     * @return {@code true} if the block changed
+     * @see #edit(Consumer, int)
+     */
     public boolean setBlockState(Block block, int x, int y, int z, int flags) {
         if (isInBorder(x, y, z)) {
-            int i = (y * depth + z) * width + x;
-            if (block == blocks[i])
+            var chunk = getChunk(x >> 4, y >> 4, z >> 4);
+            if (chunk == null || chunk.setBlockState(x & 15, y & 15, z & 15, block) == block)
                 return false;
-            blocks[i] = block;
-            generateLightmap(x, z, 1, 1);
-            for (var listener : worldListeners)
-                listener.blockChanged(x, y, z);
+            updateLightmap(x, y, z, block, (flags & NOTIFY_COLUMN) != 0);
+            lightEngine.blockChanged(x, y, z, block);
+            if ((flags & NOTIFY_NEIGHBOR) != 0) {
+                for (var listener : worldListeners)
+                    listener.blockChanged(x, y, z);
+            }
+            if ((flags & NOTIFY_CHUNK) != 0) {
+                for (var listener : worldListeners)
+                    listener.blocksChanged(x, y, z, x, y, z);
+            }
             return true;
         }
         return false;
     }
 
+    public boolean setBlockState(Block block, int x, int y, int z) {
+        return setBlockState(block, x, y, z, NOTIFY_ALL);
+    }
+
+    /**
+     * Edit blocks in a batch, notifying the light columns and once per
+     * changed chunk.
+     *
+     * @param action the edits
+     * @return the count of changed blocks
+     * @see #edit(Consumer, int)
+     */
+    public int edit(Consumer<EditBatch> action) {
+        return edit(action, NOTIFY_COLUMN | NOTIFY_CHUNK);
+    }
+
+    /**
+     * Edit blocks in a batch.
+     * <p>
+     * The blocks are set while the action runs. When it returns, the lightmap
+     * of every changed block column is scanned once from its highest change,
+     * the light engine gets all changes as one update, and the listeners are
+     * notified by the flags:
+     * </p>
+     * <ul>
+     * <li>{@link IWorldListener#NOTIFY_NEIGHBOR NOTIFY_NEIGHBOR}:
+     * {@link IWorldListener#blockChanged blockChanged} for every change</li>
+     * <li>{@link IWorldListener#NOTIFY_COLUMN NOTIFY_COLUMN}:
+     * {@link IWorldListener#lightColumnChanged lightColumnChanged} once per
+     * changed lightmap column</li>
+     * <li>{@link IWorldListener#NOTIFY_CHUNK NOTIFY_CHUNK}:
+     * {@link IWorldListener#blocksChanged blocksChanged} once per changed
+     * chunk, with the bounds of its changes</li>
+     * </ul>
+     *
+     * @param action the edits
+     * @param flags  the {@code NOTIFY_*} flags
+     * @return the count of changed blocks
+     */
+    public int edit(Consumer<EditBatch> action, int flags) {
+        var batch = new EditBatch(this);
+        action.accept(batch);
+        int count = batch.getChangeCount();
+        if (count == 0)
+            return 0;
+
+        boolean notifyColumn = (flags & NOTIFY_COLUMN) != 0;
+        for (long key : batch.columnTops.keySet()) {
+            var lightmap = lightmaps.get(key);
+            if (lightmap == null)
+                continue;
+            int x0 = BlockPos.xFromLong(key) << 4;
+            int z0 = BlockPos.zFromLong(key) << 4;
+            var tops = batch.columnTops.get(key);
+            for (int i = 0; i < tops.length; i++) {
+                if (tops[i] < 0)
+                    continue;
+                // Nothing above both the old top and the highest change blocks light
+                int x = x0 + (i & 15);
+                int z = z0 + (i >> 4);
+                setLightmap(lightmap, i, x, z, findLightBlocker(x, max(lightmap[i], tops[i]), z), notifyColumn);
+            }
+        }
+
+        lightEngine.blocksChanged(batch.changes.toLongArray(), batch.opaque);
+
+        if ((flags & NOTIFY_NEIGHBOR) != 0) {
+            for (int i = 0; i < count; i++) {
+                long change = batch.changes.getLong(i);
+                int x = LightEngine.unpackX(change);
+                int y = LightEngine.unpackY(change);
+                int z = LightEngine.unpackZ(change);
+                for (var listener : worldListeners)
+                    listener.blockChanged(x, y, z);
+            }
+        }
+        if ((flags & NOTIFY_CHUNK) != 0) {
+            for (var region : batch.chunkRegions.values()) {
+                for (var listener : worldListeners)
+                    listener.blocksChanged(region[0], region[1], region[2], region[3], region[4], region[5]);
+            }
+        }
+        return count;
+    }
+
+    @Override
     public Block getBlockState(int x, int y, int z) {
-        if (isInBorder(x, y, z))
-            return blocks[(y * depth + z) * width + x];
+        if (isInBorder(x, y, z)) {
+            var chunk = getChunk(x >> 4, y >> 4, z >> 4);
+            if (chunk != null)
+                return chunk.getBlockState(x & 15, y & 15, z & 15);
+        }
         return Blocks.AIR;
     }
 
-    public boolean isLit(int x, int y, int z) {
-        return !isInBorder(x, y, z) || y >= lightmap[x + z * width];
+    /**
+     * Run the light engine if it has no thread of its own, then install the
+     * section light it published and notify the listeners.
+     */
+    public void applyLightUpdates() {
+        lightEngine.runUpdates();
+        LightEngine.SectionLight light;
+        while ((light = lightEngine.pollPublished()) != null) {
+            var chunk = getChunk(light.x, light.y, light.z);
+            if (chunk == null)
+                continue;
+            int sides = chunk.setLight(light.sky, light.block);
+            for (var listener : worldListeners)
+                listener.lightChanged(light.x, light.y, light.z, sides);
+        }
     }
 
-    public boolean isSolidBlock(int x, int y, int z) {
-        return getBlockState(x, y, z).isSolid();
+    /**
+     * Get the sky light. Before the light engine has published a chunk, the
+     * blocks above the lightmap are full lit and the others dark.
+     *
+     * @param x the block x
+     * @param y the block y
+     * @param z the block z
+     * @return the light level, 0 to 15
+     */
+    @Override
+    public int getSkyLight(int x, int y, int z) {
+        if (!isInBorder(x, y, z))
+            return LightEngine.MAX_LIGHT;
+        var chunk = getChunk(x >> 4, y >> 4, z >> 4);
+        if (chunk == null)
+            return LightEngine.MAX_LIGHT;
+        var light = chunk.getSkyLight();
+        if (light == null) {
+            var lightmap = lightmaps.get(getColumnPos(x >> 4, z >> 4));
+            return y > lightmap[(x & 15) + (z & 15) * CHUNK_SIZE] ? LightEngine.MAX_LIGHT : 0;
+        }
+        return light.get(x & 15, y & 15, z & 15);
     }
 
-    public void randomTick(int minX,
-                           int minY,
-                           int minZ,
-                           int maxX,
-                           int maxY,
-                           int maxZ) {
-        for (int x = minX; x < maxX; x++) {
-            for (int y = minY; y < maxY; y++) {
-                for (int z = minZ; z < maxZ; z++) {
-                    getBlockState(x, y, z).randomTick(null, this, x, y, z, random);
-                }
+    @Override
+    public int getBlockLight(int x, int y, int z) {
+        if (!isInBorder(x, y, z))
+            return 0;
+        var chunk = getChunk(x >> 4, y >> 4, z >> 4);
+        if (chunk == null || chunk.getBlockLight() == null)
+            return 0;
+        return chunk.getBlockLight().get(x & 15, y & 15, z & 15);
+    }
+
+    /**
+     * Tick random blocks in every loaded chunk. The chunks without any
+     * {@linkplain Block#hasRandomTicks() block having random ticks} are
+     * skipped, so the cost scales with the loaded chunks, not with the blocks.
+     *
+     * @param count the count of random positions per chunk
+     */
+    public void randomTick(int count) {
+        if (count <= 0)
+            return;
+        for (var chunk : chunks.values()) {
+            if (!chunk.hasRandomTicks())
+                continue;
+            int x0 = chunk.x * CHUNK_SIZE;
+            int y0 = chunk.y * CHUNK_SIZE;
+            int z0 = chunk.z * CHUNK_SIZE;
+            for (int i = 0; i < count; i++) {
+                // 12 random bits pick the local position
+                int pos = random.nextInt();
+                int x = pos & 15;
+                int y = (pos >> 4) & 15;
+                int z = (pos >> 8) & 15;
+                var block = chunk.getBlockState(x, y, z);
+                if (block.hasRandomTicks())
+                    block.randomTick(null, this, x0 + x, y0 + y, z0 + z, random);
             }
         }
     }
 
+    public TerrainGenerator getGenerator() {
+        return generator;
+    }
+
+    public LightEngine getLightEngine() {
+        return lightEngine;
+    }
+
+    @Override
+    public void close() {
+        generator.close();
+        lightEngine.close();
+    }
+
     public Random getRandom() {
         return random;
     }
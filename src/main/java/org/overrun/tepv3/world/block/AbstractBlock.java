@@ -36,12 +36,15 @@ import java.util.Random;
  * @since 3.0.1
  */
 public abstract class AbstractBlock {
-    private final boolean isAir, isOpaque, isSolid;
+    private final boolean isAir, isOpaque, isSolid, randomTicks;
+    private final int luminance;
 
     public AbstractBlock(Settings settings) {
         isAir = settings.isAir;
         isOpaque = settings.isOpaque;
         isSolid = settings.isSolid;
+        randomTicks = settings.randomTicks;
+        luminance = settings.luminance;
     }
 
     public BlockRenderType getRenderType(BlockState state) {
@@ -80,8 +83,28 @@ public abstract class AbstractBlock {
         return isSolid;
     }
 
+    /**
+     * Whether {@link #randomTick} does anything. Sections without such blocks
+     * are skipped by the random ticks.
+     *
+     * @return {@code true} if this block has random ticks
+     */
+    public boolean hasRandomTicks() {
+        return randomTicks;
+    }
+
+    /**
+     * Get the block light this block emits.
+     *
+     * @return the light level, 0 to 15
+     */
+    public int getLuminance() {
+        return luminance;
+    }
+
     public static class Settings {
-        private boolean isAir = false, isOpaque = true, isSolid = true;
+        private boolean isAir = false, isOpaque = true, isSolid = true, randomTicks = false;
+        private int luminance = 0;
 
         public Settings air() {
             isAir = true;
@@ -97,5 +120,15 @@ public abstract class AbstractBlock {
             isSolid = false;
             return this;
         }
+
+        public Settings ticksRandomly() {
+            randomTicks = true;
+            return this;
+        }
+
+        public Settings luminance(int luminance) {
+            this.luminance = luminance;
+            return this;
+        }
     }
 }
@@ -24,11 +24,11 @@
 
 package org.overrun.tepv3.world.block;
 
-import org.overrun.tepv3.client.render.model.Mesh;
+import org.overrun.tepv3.client.gl.IVertexBuilder;
 import org.overrun.tepv3.util.Direction;
 import org.overrun.tepv3.util.Identifier;
 import org.overrun.tepv3.util.registry.Registries;
-import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.IBlockView;
 
 import static org.overrun.tepv3.client.tex.SpriteAtlasTextures.BLOCK_ATLAS;
 import static org.overrun.tepv3.client.tex.SpriteAtlasTextures.getAtlas;
@@ -44,43 +44,74 @@ public class Block extends AbstractBlock {
     }
 
     /**
-     * render
+     * Render the given faces.
      *
      * @param builder builder
      * @param world   world
-     * @param layer   layer
+     * @param faces   the faces to render, bit {@link Direction#getId()} for each
      * @param x       x
      * @param y       y
      * @param z       z
+     * @see #getVisibleFaces(IBlockView, int, int, int)
      * @deprecated will remove in the future
      */
     @Deprecated
-    public void render(Mesh.Builder builder, World world, int layer, int x, int y, int z) {
+    public void render(IVertexBuilder builder, IBlockView world, int faces, int x, int y, int z) {
         float c1 = 1.0f;
         float c2 = 0.8f;
         float c3 = 0.6f;
-        if (shouldRenderFace(world, x - 1, y, z, layer)) {
-            renderFace(builder.color(c3, c3, c3), x, y, z, WEST);
+        // Each face is shaded by the light of the block it faces
+        if (hasFace(faces, WEST)) {
+            float c = c3 * world.getBrightness(x - 1, y, z);
+            renderFace(builder.color(c, c, c), x, y, z, WEST);
         }
-        if (shouldRenderFace(world, x + 1, y, z, layer)) {
-            renderFace(builder.color(c1, c1, c1), x, y, z, EAST);
+        if (hasFace(faces, EAST)) {
+            float c = c1 * world.getBrightness(x + 1, y, z);
+            renderFace(builder.color(c, c, c), x, y, z, EAST);
         }
-        if (shouldRenderFace(world, x, y - 1, z, layer)) {
-            renderFace(builder.color(c3, c3, c3), x, y, z, DOWN);
+        if (hasFace(faces, DOWN)) {
+            float c = c3 * world.getBrightness(x, y - 1, z);
+            renderFace(builder.color(c, c, c), x, y, z, DOWN);
         }
-        if (shouldRenderFace(world, x, y + 1, z, layer)) {
-            renderFace(builder.color(c1, c1, c1), x, y, z, UP);
+        if (hasFace(faces, UP)) {
+            float c = c1 * world.getBrightness(x, y + 1, z);
+            renderFace(builder.color(c, c, c), x, y, z, UP);
         }
-        if (shouldRenderFace(world, x, y, z - 1, layer)) {
-            renderFace(builder.color(c2, c2, c2), x, y, z, NORTH);
+        if (hasFace(faces, NORTH)) {
+            float c = c2 * world.getBrightness(x, y, z - 1);
+            renderFace(builder.color(c, c, c), x, y, z, NORTH);
         }
-        if (shouldRenderFace(world, x, y, z + 1, layer)) {
-            renderFace(builder.color(c2, c2, c2), x, y, z, SOUTH);
+        if (hasFace(faces, SOUTH)) {
+            float c = c2 * world.getBrightness(x, y, z + 1);
+            renderFace(builder.color(c, c, c), x, y, z, SOUTH);
         }
     }
 
-    protected boolean shouldRenderFace(World world, int x, int y, int z, int layer) {
-        return !world.isSolidBlock(x, y, z) && (world.isLit(x, y, z) ^ (layer == 1));
+    /**
+     * Get the faces to render: the faces towards a non-solid block. The lit
+     * and dark faces are told apart by their colour only.
+     *
+     * @param world world
+     * @param x     x
+     * @param y     y
+     * @param z     z
+     * @return the faces, bit {@link Direction#getId()} for each
+     */
+    public int getVisibleFaces(IBlockView world, int x, int y, int z) {
+        int faces = 0;
+        for (var face : Direction.values()) {
+            if (shouldRenderFace(world, x + face.getOffsetX(), y + face.getOffsetY(), z + face.getOffsetZ()))
+                faces |= 1 << face.getId();
+        }
+        return faces;
+    }
+
+    protected static boolean hasFace(int faces, Direction face) {
+        return (faces & 1 << face.getId()) != 0;
+    }
+
+    protected boolean shouldRenderFace(IBlockView world, int x, int y, int z) {
+        return !world.isSolidBlock(x, y, z);
     }
 
     /**
@@ -96,7 +127,7 @@ public class Block extends AbstractBlock {
     }
 
     @Deprecated
-    public void renderFace(Mesh.Builder builder, int x, int y, int z, Direction face) {
+    public void renderFace(IVertexBuilder builder, int x, int y, int z, Direction face) {
         var tex = getTexture(face);
         var u0 = getAtlas(BLOCK_ATLAS).getU0(tex);
         var u1 = getAtlas(BLOCK_ATLAS).getU1(tex);
@@ -24,11 +24,11 @@
 
 package org.overrun.tepv3.world.block;
 
-import org.overrun.tepv3.client.render.model.Mesh;
+import org.overrun.tepv3.client.gl.IVertexBuilder;
 import org.overrun.tepv3.util.Direction;
 import org.overrun.tepv3.util.Identifier;
 import org.overrun.tepv3.util.registry.Registries;
-import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.IBlockView;
 
 import static org.overrun.tepv3.util.Direction.*;
 import static org.overrun.tepv3.util.Direction.SOUTH;
@@ -46,29 +46,35 @@ public class GrassBlock extends Block {
     }
 
     @Override
-    public void render(Mesh.Builder builder, World world, int layer, int x, int y, int z) {
+    public void render(IVertexBuilder builder, IBlockView world, int faces, int x, int y, int z) {
         float c1 = 1.0f;
         float c2 = 0.8f;
         float c3 = 0.6f;
-        if (shouldRenderFace(world, x - 1, y, z, layer)) {
-            renderFace(builder.color(c3, c3, c3), x, y, z, WEST);
+        if (hasFace(faces, WEST)) {
+            float c = c3 * world.getBrightness(x - 1, y, z);
+            renderFace(builder.color(c, c, c), x, y, z, WEST);
         }
-        if (shouldRenderFace(world, x + 1, y, z, layer)) {
-            renderFace(builder.color(c1, c1, c1), x, y, z, EAST);
+        if (hasFace(faces, EAST)) {
+            float c = c1 * world.getBrightness(x + 1, y, z);
+            renderFace(builder.color(c, c, c), x, y, z, EAST);
         }
-        if (shouldRenderFace(world, x, y - 1, z, layer)) {
-            renderFace(builder.color(c3, c3, c3), x, y, z, DOWN);
+        if (hasFace(faces, DOWN)) {
+            float c = c3 * world.getBrightness(x, y - 1, z);
+            renderFace(builder.color(c, c, c), x, y, z, DOWN);
         }
-        if (shouldRenderFace(world, x, y + 1, z, layer)) {
-            renderFace(builder.color(c1 * 0.56640625f,
-                c1 * 0.73828125f,
-                c1 * 0.34765625f), x, y, z, UP);
+        if (hasFace(faces, UP)) {
+            float c = c1 * world.getBrightness(x, y + 1, z);
+            renderFace(builder.color(c * 0.56640625f,
+                c * 0.73828125f,
+                c * 0.34765625f), x, y, z, UP);
         }
-        if (shouldRenderFace(world, x, y, z - 1, layer)) {
-            renderFace(builder.color(c2, c2, c2), x, y, z, NORTH);
+        if (hasFace(faces, NORTH)) {
+            float c = c2 * world.getBrightness(x, y, z - 1);
+            renderFace(builder.color(c, c, c), x, y, z, NORTH);
         }
-        if (shouldRenderFace(world, x, y, z + 1, layer)) {
-            renderFace(builder.color(c2, c2, c2), x, y, z, SOUTH);
+        if (hasFace(faces, SOUTH)) {
+            float c = c2 * world.getBrightness(x, y, z + 1);
+            renderFace(builder.color(c, c, c), x, y, z, SOUTH);
         }
     }
 
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.chunk;
+
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.block.Blocks;
+
+import java.util.Arrays;
+
+/**
+ * A 16&#xB3; section of blocks, backed by a {@link PalettedContainer}.
+ * <p>
+ * The section also keeps which blocks are solid and opaque as bit masks of
+ * 64 longs, indexed as {@link PalettedContainer#index(int, int, int)
+ * PalettedContainer.index}. A long holds four rows along x, so
+ * {@link #getRow(long[], int, int)} reads the 16 blocks of a row at once.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class ChunkSection {
+    private final PalettedContainer<Block> blocks = new PalettedContainer<>(Blocks.AIR);
+    private int nonEmptyBlockCount;
+    private int randomTickableBlockCount;
+    private final long[] solidMask = new long[PalettedContainer.SIZE >> 6];
+    private final long[] opaqueMask = new long[PalettedContainer.SIZE >> 6];
+
+    public Block getBlockState(int x, int y, int z) {
+        return blocks.get(PalettedContainer.index(x, y, z));
+    }
+
+    /**
+     * Set the block at a local position.
+     *
+     * @param x     the local x
+     * @param y     the local y
+     * @param z     the local z
+     * @param block the block
+     * @return the previous block
+     */
+    public Block setBlockState(int x, int y, int z, Block block) {
+        int i = PalettedContainer.index(x, y, z);
+        var old = blocks.set(i, block);
+        if (old != block) {
+            setBit(solidMask, i, block.isSolid());
+            setBit(opaqueMask, i, block.isOpaque());
+            if (!old.isAir())
+                --nonEmptyBlockCount;
+            if (!block.isAir())
+                ++nonEmptyBlockCount;
+            if (old.hasRandomTicks())
+                --randomTickableBlockCount;
+            if (block.hasRandomTicks())
+                ++randomTickableBlockCount;
+        }
+        return old;
+    }
+
+    /**
+     * Fill the whole section with one block.
+     *
+     * @param block the block
+     */
+    public void fill(Block block) {
+        blocks.fill(block);
+        nonEmptyBlockCount = block.isAir() ? 0 : PalettedContainer.SIZE;
+        randomTickableBlockCount = block.hasRandomTicks() ? PalettedContainer.SIZE : 0;
+        Arrays.fill(solidMask, block.isSolid() ? -1L : 0L);
+        Arrays.fill(opaqueMask, block.isOpaque() ? -1L : 0L);
+    }
+
+    private static void setBit(long[] mask, int i, boolean value) {
+        if (value)
+            mask[i >> 6] |= 1L << i;
+        else
+            mask[i >> 6] &= ~(1L << i);
+    }
+
+    /**
+     * Read a row along x of a mask.
+     *
+     * @param mask the mask
+     * @param y    the local y
+     * @param z    the local z
+     * @return the 16 bits of the row, bit x for the block at x
+     */
+    public static int getRow(long[] mask, int y, int z) {
+        return (int) (mask[y << 2 | z >> 2] >>> ((z & 3) << 4)) & 0xffff;
+    }
+
+    /**
+     * Get the mask of the {@linkplain Block#isSolid() solid} blocks. Do not
+     * modify it.
+     *
+     * @return the mask
+     */
+    public long[] getSolidMask() {
+        return solidMask;
+    }
+
+    /**
+     * Get the mask of the {@linkplain Block#isOpaque() opaque} blocks. Do not
+     * modify it.
+     *
+     * @return the mask
+     */
+    public long[] getOpaqueMask() {
+        return opaqueMask;
+    }
+
+    /**
+     * Drop unused palette entries. Call it after filling the section in bulk.
+     */
+    public void compact() {
+        blocks.compact();
+    }
+
+    public boolean isEmpty() {
+        return nonEmptyBlockCount == 0;
+    }
+
+    /**
+     * Check whether every block in this section is
+     * {@linkplain Block#isSolid() solid}.
+     *
+     * @return {@code true} if all are solid
+     */
+    public boolean isFullySolid() {
+        for (long bits : solidMask) {
+            if (bits != -1L)
+                return false;
+        }
+        return true;
+    }
+
+    public int getNonEmptyBlockCount() {
+        return nonEmptyBlockCount;
+    }
+
+    /**
+     * Whether any block in this section {@linkplain Block#hasRandomTicks() has random ticks}.
+     *
+     * @return {@code true} if this section needs random ticks
+     */
+    public boolean hasRandomTicks() {
+        return randomTickableBlockCount > 0;
+    }
+
+    public int getRandomTickableBlockCount() {
+        return randomTickableBlockCount;
+    }
+
+    public PalettedContainer<Block> getBlocks() {
+        return blocks;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.chunk;
+
+/**
+ * <h2>The chunk generation status</h2>
+ * The generation stages in order. A chunk at a status has finished that stage
+ * and every stage before it.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public enum ChunkStatus {
+    /**
+     * Nothing generated yet.
+     */
+    EMPTY(0, null),
+    /**
+     * The heightmap and the raw stone terrain.
+     */
+    NOISE(0, null),
+    /**
+     * The surface blocks replaced by height: bedrock, dirt and grass.
+     */
+    SURFACE(0, null),
+    /**
+     * The features, which may reach one column into their neighbours; they
+     * read the neighbour heightmaps, so the neighbours must be at
+     * {@link #NOISE}.
+     */
+    FEATURES(1, NOISE),
+    /**
+     * The sky lightmap. The chunk is complete.
+     */
+    LIGHT(0, null);
+
+    private static final ChunkStatus[] VALUES = values();
+    private final int neighbourRadius;
+    private final ChunkStatus neighbourStatus;
+
+    ChunkStatus(int neighbourRadius, ChunkStatus neighbourStatus) {
+        this.neighbourRadius = neighbourRadius;
+        this.neighbourStatus = neighbourStatus;
+    }
+
+    /**
+     * Get the radius in columns of the neighbours this stage needs.
+     *
+     * @return the radius; 0 if this stage only touches its own column
+     */
+    public int getNeighbourRadius() {
+        return neighbourRadius;
+    }
+
+    /**
+     * Get the status the neighbours must reach before this stage can run.
+     *
+     * @return the status, or {@code null} if the stage doesn't need neighbours
+     */
+    public ChunkStatus getNeighbourStatus() {
+        return neighbourStatus;
+    }
+
+    public boolean isAtLeast(ChunkStatus status) {
+        return ordinal() >= status.ordinal();
+    }
+
+    /**
+     * Get the next stage.
+     *
+     * @return the next status, or this if it is the last
+     */
+    public ChunkStatus next() {
+        return this == LIGHT ? this : VALUES[ordinal() + 1];
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.chunk;
+
+import java.util.Arrays;
+
+/**
+ * <h2>The nibble array</h2>
+ * 4096 values of 4 bits, two per byte, indexed as
+ * {@link PalettedContainer#index(int, int, int) PalettedContainer.index}.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class NibbleArray {
+    public static final int SIZE = 4096;
+    private final byte[] data;
+
+    public NibbleArray() {
+        data = new byte[SIZE >> 1];
+    }
+
+    /**
+     * Create a nibble array with every value set.
+     *
+     * @param value the value, 0 to 15
+     */
+    public NibbleArray(int value) {
+        this();
+        Arrays.fill(data, (byte) (value | value << 4));
+    }
+
+    private NibbleArray(byte[] data) {
+        this.data = data;
+    }
+
+    public int get(int index) {
+        return data[index >> 1] >> ((index & 1) << 2) & 15;
+    }
+
+    public int get(int x, int y, int z) {
+        return get(PalettedContainer.index(x, y, z));
+    }
+
+    public void set(int index, int value) {
+        int i = index >> 1;
+        int shift = (index & 1) << 2;
+        data[i] = (byte) (data[i] & ~(15 << shift) | (value & 15) << shift);
+    }
+
+    public NibbleArray copy() {
+        return new NibbleArray(data.clone());
+    }
+
+    /**
+     * Check whether another nibble array has the same values.
+     *
+     * @param other the other array
+     * @return {@code true} if all values are the same
+     */
+    public boolean contentEquals(NibbleArray other) {
+        return other == this || other != null && Arrays.equals(data, other.data);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.chunk;
+
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * <h2>The paletted container</h2>
+ * Stores {@link #SIZE} values as indices into a local palette.
+ * <p>
+ * A container holding only one value has no index data at all. Once a second
+ * value is set, the indices are bit-packed into {@code long}s with 1, 2, 4, 8
+ * or 16 bits per entry, growing as the palette grows. The bit counts are
+ * powers of two, so no entry spans two {@code long}s and both
+ * {@link #get(int)} and {@link #set(int, Object)} are O(1).
+ * </p>
+ *
+ * @param <T> the value type, compared by identity
+ * @author squid233
+ * @since 3.0.1
+ */
+public class PalettedContainer<T> {
+    public static final int SIZE = 4096;
+    /**
+     * The palette size from which lookups use a hash map instead of a linear scan.
+     */
+    private static final int HASHED_PALETTE_SIZE = 16;
+    private static final int MAX_BITS_LOG = 4;
+    private Object[] palette;
+    private int paletteSize;
+    private Reference2IntOpenHashMap<Object> paletteIndices;
+    /**
+     * The log2 of the bits per entry, or {@code -1} in single-value mode.
+     */
+    private int bitsLog = -1;
+    private long[] data;
+
+    public PalettedContainer(T defaultValue) {
+        palette = new Object[]{defaultValue};
+        paletteSize = 1;
+    }
+
+    /**
+     * Get the index of a position inside the container.
+     *
+     * @param x the local x in [0, 16)
+     * @param y the local y in [0, 16)
+     * @param z the local z in [0, 16)
+     * @return the index
+     */
+    public static int index(int x, int y, int z) {
+        return (y << 8) | (z << 4) | x;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (bitsLog < 0)
+            return (T) palette[0];
+        return (T) palette[getIndex(index)];
+    }
+
+    /**
+     * Set the value at an index.
+     *
+     * @param index the index
+     * @param value the value
+     * @return the previous value
+     */
+    @SuppressWarnings("unchecked")
+    public T set(int index, T value) {
+        int id = indexOf(value);
+        if (id < 0) {
+            if (bitsLog < 0 && palette[0] == value)
+                return value;
+            id = addToPalette(value);
+        }
+        int old = getIndex(index);
+        setIndex(index, id);
+        return (T) palette[old];
+    }
+
+    /**
+     * Fill the whole container with a value. The container goes back to
+     * single-value mode.
+     *
+     * @param value the value
+     */
+    public void fill(T value) {
+        palette = new Object[]{value};
+        paletteSize = 1;
+        paletteIndices = null;
+        bitsLog = -1;
+        data = null;
+    }
+
+    /**
+     * Rebuild the palette from the values that are actually in use, dropping
+     * stale entries and shrinking the index data. A container left with only one
+     * value goes back to single-value mode.
+     */
+    @SuppressWarnings("unchecked")
+    public void compact() {
+        if (bitsLog < 0)
+            return;
+        var counts = new int[paletteSize];
+        for (int i = 0; i < SIZE; i++) {
+            ++counts[getIndex(i)];
+        }
+        var remap = new int[paletteSize];
+        int used = 0;
+        for (int i = 0; i < paletteSize; i++) {
+            remap[i] = counts[i] > 0 ? used++ : -1;
+        }
+        if (used == paletteSize)
+            return;
+        if (used == 1) {
+            for (int i = 0; i < paletteSize; i++) {
+                if (counts[i] > 0) {
+                    fill((T) palette[i]);
+                    return;
+                }
+            }
+        }
+        var newPalette = new Object[Math.max(used, 2)];
+        for (int i = 0; i < paletteSize; i++) {
+            if (remap[i] >= 0)
+                newPalette[remap[i]] = palette[i];
+        }
+        var oldData = data;
+        int oldBitsLog = bitsLog;
+        palette = newPalette;
+        paletteSize = used;
+        bitsLog = bitsLogFor(used);
+        data = new long[SIZE >> (6 - bitsLog)];
+        for (int i = 0; i < SIZE; i++) {
+            setIndex(i, remap[getIndex(oldData, oldBitsLog, i)]);
+        }
+        rebuildIndices();
+    }
+
+    /**
+     * Check if every position holds the same value. Only containers in
+     * single-value mode are detected, call {@link #compact()} first to be exact.
+     *
+     * @return {@code true} if the container is uniform
+     */
+    public boolean isSingleValue() {
+        return bitsLog < 0;
+    }
+
+    /**
+     * Get the bits per entry.
+     *
+     * @return the bits per entry, {@code 0} in single-value mode
+     */
+    public int getBits() {
+        return bitsLog < 0 ? 0 : 1 << bitsLog;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * Get the estimated heap size of the index data and palette in bytes.
+     *
+     * @return the size in bytes
+     */
+    public int getDataSize() {
+        return (data != null ? data.length << 3 : 0) + (palette.length << 2);
+    }
+
+    private int indexOf(T value) {
+        if (paletteIndices != null)
+            return paletteIndices.getInt(value);
+        if (bitsLog < 0)
+            return -1;
+        for (int i = 0; i < paletteSize; i++) {
+            if (palette[i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    private int addToPalette(T value) {
+        int id = paletteSize;
+        if (id == palette.length) {
+            palette = Arrays.copyOf(palette, palette.length << 1);
+        }
+        palette[id] = value;
+        ++paletteSize;
+        if (paletteIndices != null) {
+            paletteIndices.put(value, id);
+        } else if (paletteSize > HASHED_PALETTE_SIZE) {
+            rebuildIndices();
+        }
+        int newBitsLog = bitsLogFor(paletteSize);
+        if (newBitsLog != bitsLog)
+            resize(newBitsLog);
+        return id;
+    }
+
+    private void rebuildIndices() {
+        if (paletteSize <= HASHED_PALETTE_SIZE) {
+            paletteIndices = null;
+            return;
+        }
+        paletteIndices = new Reference2IntOpenHashMap<>(paletteSize);
+        paletteIndices.defaultReturnValue(-1);
+        for (int i = 0; i < paletteSize; i++) {
+            paletteIndices.put(palette[i], i);
+        }
+    }
+
+    private void resize(int newBitsLog) {
+        var oldData = data;
+        int oldBitsLog = bitsLog;
+        bitsLog = newBitsLog;
+        data = new long[SIZE >> (6 - newBitsLog)];
+        if (oldData != null) {
+            for (int i = 0; i < SIZE; i++) {
+                setIndex(i, getIndex(oldData, oldBitsLog, i));
+            }
+        }
+    }
+
+    private int getIndex(int index) {
+        if (bitsLog < 0)
+            return 0;
+        return getIndex(data, bitsLog, index);
+    }
+
+    private static int getIndex(long[] data, int bitsLog, int index) {
+        int shift = (index & ((64 >> bitsLog) - 1)) << bitsLog;
+        return (int) (data[index >> (6 - bitsLog)] >>> shift & ((1L << (1 << bitsLog)) - 1));
+    }
+
+    private void setIndex(int index, int id) {
+        int i = index >> (6 - bitsLog);
+        int shift = (index & ((64 >> bitsLog) - 1)) << bitsLog;
+        long mask = ((1L << (1 << bitsLog)) - 1) << shift;
+        data[i] = data[i] & ~mask | ((long) id << shift) & mask;
+    }
+
+    private static int bitsLogFor(int paletteSize) {
+        int bits = 32 - Integer.numberOfLeadingZeros(paletteSize - 1);
+        int log = 32 - Integer.numberOfLeadingZeros(Math.max(bits, 1) - 1);
+        if (log > MAX_BITS_LOG)
+            throw new IllegalStateException("Palette overflow: " + paletteSize + " entries");
+        return log;
+    }
+}
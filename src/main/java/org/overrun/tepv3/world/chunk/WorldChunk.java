@@ -0,0 +1,230 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.chunk;
+
+import org.overrun.tepv3.util.BlockPos;
+import org.overrun.tepv3.util.Direction;
+import org.overrun.tepv3.world.Chunk;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.block.Block;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A loaded 16&#xB3; chunk of a {@link World}, keyed by its packed chunk position.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class WorldChunk extends Chunk {
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    public final World world;
+    /**
+     * The chunk coordinates.
+     */
+    public final int x, y, z;
+    private final ChunkSection section = new ChunkSection();
+    private volatile ChunkStatus status = ChunkStatus.EMPTY;
+    private NibbleArray skyLight, blockLight;
+    /**
+     * The stamps of the last change of the blocks and of the light, unique
+     * over all chunks.
+     */
+    private long blockVersion = nextVersion(), lightVersion = nextVersion();
+    /**
+     * The stamps of the last change of the light on each border layer, by
+     * {@link Direction#getId()}.
+     */
+    private final long[] borderLightVersions = new long[DIRECTIONS.length];
+
+    public WorldChunk(World world, int x, int y, int z) {
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        for (int i = 0; i < borderLightVersions.length; i++) {
+            borderLightVersions[i] = nextVersion();
+        }
+    }
+
+    private static long nextVersion() {
+        return VERSIONS.incrementAndGet();
+    }
+
+    /**
+     * Get the block at a local position.
+     *
+     * @param x the local x
+     * @param y the local y
+     * @param z the local z
+     * @return the block
+     */
+    public Block getBlockState(int x, int y, int z) {
+        return section.getBlockState(x, y, z);
+    }
+
+    /**
+     * Set the block at a local position.
+     *
+     * @param x     the local x
+     * @param y     the local y
+     * @param z     the local z
+     * @param block the block
+     * @return the previous block
+     */
+    public Block setBlockState(int x, int y, int z, Block block) {
+        var old = section.setBlockState(x, y, z, block);
+        if (old != block)
+            blockVersion = nextVersion();
+        return old;
+    }
+
+    /**
+     * Get the sky light published by the light engine.
+     *
+     * @return the sky light, or {@code null} before the first publish
+     */
+    public NibbleArray getSkyLight() {
+        return skyLight;
+    }
+
+    /**
+     * Get the block light published by the light engine.
+     *
+     * @return the block light, or {@code null} before the first publish
+     */
+    public NibbleArray getBlockLight() {
+        return blockLight;
+    }
+
+    /**
+     * Install the published light. The
+     * {@linkplain #getLightVersion() light version} changes only if the light
+     * does, and the {@linkplain #getBorderLightVersion border light version}
+     * of a side only if the light on that border layer does.
+     *
+     * @param skyLight   the sky light
+     * @param blockLight the block light
+     * @return the sides whose border layer changed, bit
+     * {@link Direction#getId()} for each
+     */
+    public int setLight(NibbleArray skyLight, NibbleArray blockLight) {
+        int sides = 0;
+        if (!skyLight.contentEquals(this.skyLight) || !blockLight.contentEquals(this.blockLight)) {
+            lightVersion = nextVersion();
+            for (var dir : DIRECTIONS) {
+                if (!isBorderEqual(dir, skyLight, this.skyLight) || !isBorderEqual(dir, blockLight, this.blockLight)) {
+                    borderLightVersions[dir.getId()] = nextVersion();
+                    sides |= 1 << dir.getId();
+                }
+            }
+        }
+        this.skyLight = skyLight;
+        this.blockLight = blockLight;
+        return sides;
+    }
+
+    private static boolean isBorderEqual(Direction side, NibbleArray light, NibbleArray old) {
+        if (light == old)
+            return true;
+        if (old == null)
+            return false;
+        // The layer at the side, walked along the other two axes
+        int lx = side.getOffsetX() > 0 ? CHUNK_SIZE - 1 : 0;
+        int ly = side.getOffsetY() > 0 ? CHUNK_SIZE - 1 : 0;
+        int lz = side.getOffsetZ() > 0 ? CHUNK_SIZE - 1 : 0;
+        for (int a = 0; a < CHUNK_SIZE; a++) {
+            for (int b = 0; b < CHUNK_SIZE; b++) {
+                int x = side.getOffsetX() != 0 ? lx : a;
+                int y = side.getOffsetY() != 0 ? ly : side.getOffsetX() != 0 ? a : b;
+                int z = side.getOffsetZ() != 0 ? lz : b;
+                if (light.get(x, y, z) != old.get(x, y, z))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the version of the blocks. It changes on every change of them, and
+     * no two chunks share a version, so a chunk loaded again doesn't look
+     * unchanged.
+     *
+     * @return the version
+     */
+    public long getBlockVersion() {
+        return blockVersion;
+    }
+
+    /**
+     * Get the version of the light, as {@link #getBlockVersion()}.
+     *
+     * @return the version
+     */
+    public long getLightVersion() {
+        return lightVersion;
+    }
+
+    /**
+     * Get the version of the light on a border layer, as
+     * {@link #getLightVersion()}. A chunk only sees the border layer of its
+     * neighbours, so it only has to follow these.
+     *
+     * @param side the side of the layer
+     * @return the version
+     */
+    public long getBorderLightVersion(Direction side) {
+        return borderLightVersions[side.getId()];
+    }
+
+    public boolean hasLight() {
+        return skyLight != null;
+    }
+
+    public ChunkStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ChunkStatus status) {
+        this.status = status;
+    }
+
+    public long getPos() {
+        return BlockPos.getLongValue(x, y, z);
+    }
+
+    public ChunkSection getSection() {
+        return section;
+    }
+
+    public boolean isEmpty() {
+        return section.isEmpty();
+    }
+
+    public boolean hasRandomTicks() {
+        return section.hasRandomTicks();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.gen;
+
+/**
+ * <h2>The noise sampling quality</h2>
+ * Samples the noise on a lattice every {@link #cellSize} blocks and
+ * interpolates the blocks between.
+ * <p>
+ * The lattice is aligned to world coordinates, so neighbour patches share
+ * their border samples and the heightmaps meet without seams.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class NoiseSampling {
+    /**
+     * Sample every block.
+     */
+    public static final NoiseSampling FULL = new NoiseSampling(1, Interpolation.BILINEAR);
+    public static final NoiseSampling BILINEAR_4 = new NoiseSampling(4, Interpolation.BILINEAR);
+    public static final NoiseSampling BICUBIC_4 = new NoiseSampling(4, Interpolation.BICUBIC);
+    public final int cellSize;
+    public final Interpolation interpolation;
+
+    /**
+     * Create a sampling quality.
+     *
+     * @param cellSize      the distance between samples, a power of two from 1 to 16
+     * @param interpolation the interpolation between samples
+     */
+    public NoiseSampling(int cellSize, Interpolation interpolation) {
+        if (cellSize < 1 || cellSize > 16 || Integer.bitCount(cellSize) != 1)
+            throw new IllegalArgumentException("Cell size must be a power of two from 1 to 16; got " + cellSize);
+        this.cellSize = cellSize;
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Fill {@code dest[x + z * w]} with the noise at {@code (x0 + x, z0 + z)}.
+     *
+     * @param noise the noise
+     * @param dest  the destination, at least {@code w * d} long
+     * @param x0    the patch start x, a multiple of the cell size
+     * @param z0    the patch start z, a multiple of the cell size
+     * @param w     the patch width, a multiple of the cell size
+     * @param d     the patch depth, a multiple of the cell size
+     * @param scale the base frequency
+     */
+    public void sample(OctaveSimplexNoise noise,
+                       float[] dest,
+                       int x0,
+                       int z0,
+                       int w,
+                       int d,
+                       float scale) {
+        if (cellSize == 1) {
+            noise.fill(dest, w, d, x0, z0, 1, scale);
+            return;
+        }
+        final int mask = cellSize - 1;
+        if (((x0 | z0 | w | d) & mask) != 0)
+            throw new IllegalArgumentException("Patch isn't aligned to the cell size " + cellSize);
+        final int shift = Integer.numberOfTrailingZeros(cellSize);
+        final boolean bicubic = interpolation == Interpolation.BICUBIC;
+        // Bicubic needs one more sample on each side
+        final int pad = bicubic ? 1 : 0;
+        final int lw = (w >> shift) + 1 + 2 * pad;
+        final int ld = (d >> shift) + 1 + 2 * pad;
+        final var lattice = new float[lw * ld];
+        noise.fill(lattice, lw, ld, x0 - pad * cellSize, z0 - pad * cellSize, cellSize, scale);
+        final float inv = 1.0f / cellSize;
+
+        // Interpolate along x into rows, then along z into dest
+        final var rows = new float[w * ld];
+        for (int lz = 0; lz < ld; lz++) {
+            for (int x = 0; x < w; x++) {
+                rows[lz * w + x] = interpolate(lattice, lz * lw + (x >> shift), 1, (x & mask) * inv, bicubic);
+            }
+        }
+        for (int z = 0; z < d; z++) {
+            int base = (z >> shift) * w;
+            float t = (z & mask) * inv;
+            for (int x = 0; x < w; x++) {
+                dest[z * w + x] = interpolate(rows, base + x, w, t, bicubic);
+            }
+        }
+    }
+
+    private static float interpolate(float[] a, int i, int stride, float t, boolean bicubic) {
+        if (!bicubic) {
+            float p0 = a[i];
+            return p0 + (a[i + stride] - p0) * t;
+        }
+        // Catmull-Rom through p1 and p2
+        float p0 = a[i];
+        float p1 = a[i + stride];
+        float p2 = a[i + 2 * stride];
+        float p3 = a[i + 3 * stride];
+        return p1 + 0.5f * t * (p2 - p0
+            + t * (2.0f * p0 - 5.0f * p1 + 4.0f * p2 - p3
+            + t * (3.0f * (p1 - p2) + p3 - p0)));
+    }
+
+    @Override
+    public String toString() {
+        return cellSize == 1 ? "full" : interpolation.name().toLowerCase() + " " + cellSize;
+    }
+
+    /**
+     * The interpolation between lattice samples.
+     *
+     * @author squid233
+     * @since 3.0.1
+     */
+    public enum Interpolation {
+        BILINEAR,
+        /**
+         * Catmull-Rom; smoother than bilinear at the cost of a wider lattice.
+         */
+        BICUBIC
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.gen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * <h2>The octave simplex noise</h2>
+ * A sum of {@link SimplexNoiseSampler simplex noises}, each octave with its
+ * own permutation, doubled frequency and scaled amplitude.
+ * <p>
+ * It is immutable after construction, so the generator threads can share it.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class OctaveSimplexNoise {
+    private final SimplexNoiseSampler[] octaves;
+    private final float persistence;
+    private final float invMaxAmp;
+
+    public OctaveSimplexNoise(long seed, int octaves, float persistence) {
+        var random = new Random(seed);
+        this.octaves = new SimplexNoiseSampler[octaves];
+        this.persistence = persistence;
+        float maxAmp = 0, amp = 1;
+        for (int i = 0; i < octaves; i++) {
+            this.octaves[i] = new SimplexNoiseSampler(random);
+            maxAmp += amp;
+            amp *= persistence;
+        }
+        invMaxAmp = 1.0f / maxAmp;
+    }
+
+    /**
+     * Fill {@code dest[i + j * w]} with the noise at
+     * {@code (x0 + i * step, z0 + j * step)}.
+     *
+     * @param dest  the destination, at least {@code w * d} long
+     * @param w     the grid width
+     * @param d     the grid depth
+     * @param x0    the grid start x
+     * @param z0    the grid start z
+     * @param step  the distance between samples
+     * @param scale the base frequency
+     */
+    public void fill(float[] dest,
+                     int w,
+                     int d,
+                     float x0,
+                     float z0,
+                     float step,
+                     float scale) {
+        final int size = w * d;
+        Arrays.fill(dest, 0, size, 0.0f);
+        float amp = 1, freq = scale;
+        for (var octave : octaves) {
+            octave.add(dest, w, d, x0, z0, step, freq, amp);
+            amp *= persistence;
+            freq *= 2;
+        }
+        for (int i = 0; i < size; i++) {
+            dest[i] *= invMaxAmp;
+        }
+    }
+
+    public int getOctaves() {
+        return octaves.length;
+    }
+}
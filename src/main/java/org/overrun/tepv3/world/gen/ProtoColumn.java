@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.gen;
+
+import org.overrun.tepv3.util.BlockPos;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.chunk.ChunkStatus;
+import org.overrun.tepv3.world.chunk.WorldChunk;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The column in generation</h2>
+ * The chunks of a column with the data the generation stages pass along,
+ * owned by the {@link TerrainGenerator} until it reaches
+ * {@link ChunkStatus#LIGHT}.
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public final class ProtoColumn {
+    /**
+     * The chunk coordinates.
+     */
+    public final int x, z;
+    private final WorldChunk[] chunks;
+    private final int[] lightmap = new int[CHUNK_SIZE * CHUNK_SIZE];
+    private int[] heightmap;
+    private volatile ChunkStatus status = ChunkStatus.EMPTY;
+    // Scheduling state, only touched by the thread driving the generator
+    volatile ChunkStatus target = ChunkStatus.EMPTY;
+    boolean running;
+    boolean requested;
+    /**
+     * Whether this is only the heightmap of a column handed out to the world,
+     * kept for the features of its neighbours.
+     */
+    final boolean handedOut;
+    volatile Throwable failure;
+
+    ProtoColumn(World world, int x, int z, int ySections) {
+        this.x = x;
+        this.z = z;
+        chunks = new WorldChunk[ySections];
+        for (int y = 0; y < ySections; y++) {
+            chunks[y] = new WorldChunk(world, x, y, z);
+        }
+        handedOut = false;
+    }
+
+    /**
+     * Create the stand-in of a column handed out to the world: its heightmap
+     * without the chunks.
+     *
+     * @param column the column
+     */
+    ProtoColumn(ProtoColumn column) {
+        x = column.x;
+        z = column.z;
+        chunks = new WorldChunk[0];
+        heightmap = column.heightmap;
+        status = ChunkStatus.NOISE;
+        target = ChunkStatus.NOISE;
+        handedOut = true;
+    }
+
+    /**
+     * Get the chunks.
+     *
+     * @return the chunks from bottom to top
+     */
+    public WorldChunk[] getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Get the heightmap, indexed by {@code x + z * 16}.
+     *
+     * @return the heightmap, or {@code null} before {@link ChunkStatus#NOISE}
+     */
+    public int[] getHeightmap() {
+        return heightmap;
+    }
+
+    void setHeightmap(int[] heightmap) {
+        this.heightmap = heightmap;
+    }
+
+    /**
+     * Get the lightmap, the y of the highest light blocker per block column,
+     * indexed by {@code x + z * 16}.
+     *
+     * @return the lightmap, filled at {@link ChunkStatus#LIGHT}
+     */
+    public int[] getLightmap() {
+        return lightmap;
+    }
+
+    public ChunkStatus getStatus() {
+        return status;
+    }
+
+    void setStatus(ChunkStatus status) {
+        for (var chunk : chunks) {
+            chunk.setStatus(status);
+        }
+        this.status = status;
+    }
+
+    public long getPos() {
+        return BlockPos.getLongValue(x, 0, z);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.gen;
+
+import java.util.Random;
+
+/**
+ * <h2>The seeded simplex noise sampler</h2>
+ * 2D simplex noise with permutation tables shuffled from a seed.
+ * <p>
+ * Use {@link #add(float[], int, int, float, float, float, float, float) add}
+ * to sample a whole grid in one call. If the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}, grids are sampled with the
+ * vector API; both paths use the same float operations in the same order,
+ * so they return identical results.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class SimplexNoiseSampler {
+    static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+        && !Boolean.getBoolean("tepv3.noise.disableVector");
+    static final float F2 = (float) (0.5 * (Math.sqrt(3.0) - 1.0));
+    static final float G2 = (float) ((3.0 - Math.sqrt(3.0)) / 6.0);
+    static final float G2_2 = 2.0f * G2 - 1.0f;
+    static final float[] GRAD_X = {1, -1, 1, -1, 1, -1, 0, 0};
+    static final float[] GRAD_Y = {1, 1, -1, -1, 0, 0, 1, -1};
+    /**
+     * The permutation, repeated twice so that {@code perm[i + perm[j]]} never wraps.
+     */
+    final int[] perm = new int[512];
+    /**
+     * The permutation modulo the gradient count.
+     */
+    final int[] permGrad = new int[512];
+
+    public SimplexNoiseSampler(Random random) {
+        var p = new int[256];
+        for (int i = 0; i < 256; i++) {
+            p[i] = i;
+        }
+        for (int i = 255; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = p[i];
+            p[i] = p[j];
+            p[j] = t;
+        }
+        for (int i = 0; i < 512; i++) {
+            perm[i] = p[i & 255];
+            permGrad[i] = perm[i] & 7;
+        }
+    }
+
+    public SimplexNoiseSampler(long seed) {
+        this(new Random(seed));
+    }
+
+    /**
+     * Sample the noise at a point.
+     *
+     * @param x the x
+     * @param y the y
+     * @return the noise in about [-1, 1]
+     */
+    public float sample(float x, float y) {
+        float s = (x + y) * F2;
+        int i = floor(x + s);
+        int j = floor(y + s);
+        float t = (float) (i + j) * G2;
+        float x0 = x - ((float) i - t);
+        float y0 = y - ((float) j - t);
+        int i1 = x0 > y0 ? 1 : 0;
+        int j1 = 1 - i1;
+        float x1 = x0 - (float) i1 + G2;
+        float y1 = y0 - (float) j1 + G2;
+        float x2 = x0 + G2_2;
+        float y2 = y0 + G2_2;
+        int ii = i & 255;
+        int jj = j & 255;
+        float n = corner(permGrad[ii + perm[jj]], x0, y0)
+            + corner(permGrad[ii + i1 + perm[jj + j1]], x1, y1)
+            + corner(permGrad[ii + 1 + perm[jj + 1]], x2, y2);
+        return 70.0f * n;
+    }
+
+    /**
+     * Add {@code amp * sample((x0 + i * step) * freq, (z0 + j * step) * freq)}
+     * to {@code dest[i + j * w]} for every {@code i < w} and {@code j < d}.
+     *
+     * @param dest the destination, at least {@code w * d} long
+     * @param w    the grid width
+     * @param d    the grid depth
+     * @param x0   the grid start x
+     * @param z0   the grid start z
+     * @param step the distance between samples
+     * @param freq the frequency
+     * @param amp  the amplitude
+     */
+    public void add(float[] dest,
+                    int w,
+                    int d,
+                    float x0,
+                    float z0,
+                    float step,
+                    float freq,
+                    float amp) {
+        if (VECTOR_API) {
+            VectorSimplexNoise.add(this, dest, w, d, x0, z0, step, freq, amp);
+            return;
+        }
+        addScalar(dest, 0, w, d, w, x0, z0, step, freq, amp);
+    }
+
+    /**
+     * Add the columns {@code [from, w)} of a grid with the scalar path.
+     */
+    void addScalar(float[] dest,
+                   int from,
+                   int w,
+                   int d,
+                   int stride,
+                   float x0,
+                   float z0,
+                   float step,
+                   float freq,
+                   float amp) {
+        for (int j = 0; j < d; j++) {
+            float z = (z0 + (float) j * step) * freq;
+            int row = j * stride;
+            for (int i = from; i < w; i++) {
+                dest[row + i] += amp * sample((x0 + (float) i * step) * freq, z);
+            }
+        }
+    }
+
+    private static float corner(int g, float x, float y) {
+        float t = Math.max(0.5f - x * x - y * y, 0.0f);
+        t *= t;
+        return t * t * (GRAD_X[g] * x + GRAD_Y[g] * y);
+    }
+
+    private static int floor(float v) {
+        int i = (int) v;
+        return v < (float) i ? i - 1 : i;
+    }
+}
@@ -0,0 +1,533 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.gen;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.overrun.tepv3.util.BlockPos;
+import org.overrun.tepv3.world.SimplexHeightmap;
+import org.overrun.tepv3.world.World;
+import org.overrun.tepv3.world.block.Blocks;
+import org.overrun.tepv3.world.chunk.ChunkStatus;
+import org.overrun.tepv3.world.chunk.WorldChunk;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The terrain generator</h2>
+ * Generates chunk columns off the world through the stages of
+ * {@link ChunkStatus}, so they can be built in parallel and added to the
+ * world afterwards.
+ * <p>
+ * The stages run on a worker pool. A stage that needs its neighbours only
+ * waits until the columns in its {@link ChunkStatus#getNeighbourRadius()
+ * radius} reach the {@link ChunkStatus#getNeighbourStatus() status} it reads;
+ * the generator brings those neighbours up to that status and no further.
+ * </p>
+ * <p>
+ * Every stage depends only on the seed, the column position and the
+ * neighbours it reads, so the output is the same whatever the parallelism.
+ * </p>
+ * <p>
+ * A column is dropped once it is handed out. Only its heightmap stays while
+ * a neighbour still has to place its {@link ChunkStatus#FEATURES features},
+ * so a column loaded again is always generated from scratch.
+ * </p>
+ * <p>
+ * The scheduling methods ({@link #request}, {@link #update}, {@link #retain},
+ * {@link #clear} and {@link #generateColumns}) must be called from one thread.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class TerrainGenerator implements AutoCloseable {
+    /**
+     * One in this many columns has a boulder.
+     */
+    private static final int BOULDER_RARITY = 4;
+    private final World world;
+    private final int ySections;
+    private final float terrainScale;
+    private final OctaveSimplexNoise noise;
+    private final NoiseSampling sampling;
+    private final ForkJoinPool pool;
+    private final Long2ObjectOpenHashMap<ProtoColumn> columns = new Long2ObjectOpenHashMap<>();
+    private final ArrayList<ProtoColumn> requests = new ArrayList<>();
+    private final LinkedBlockingQueue<ProtoColumn> completed = new LinkedBlockingQueue<>();
+    private int running;
+
+    public TerrainGenerator(World world, int parallelism, NoiseSampling sampling) {
+        this.world = world;
+        ySections = (world.height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        terrainScale = 2.0f / (world.width + world.depth);
+        noise = SimplexHeightmap.createNoise(world.seed);
+        this.sampling = sampling;
+        pool = new ForkJoinPool(Math.max(parallelism, 1));
+    }
+
+    /**
+     * Generate a column through every stage on the calling thread, without
+     * the scheduler. Used as the reference of the pipeline.
+     *
+     * @param x the chunk x
+     * @param z the chunk z
+     * @return the column
+     */
+    public ProtoColumn generateColumn(int x, int z) {
+        var area = new ProtoColumn[9];
+        for (int i = 0; i < area.length; i++) {
+            int ax = x + i % 3 - 1;
+            int az = z + i / 3 - 1;
+            area[i] = new ProtoColumn(world, ax, az, ySections);
+            if (i != 4)
+                area[i].setHeightmap(generateHeightmap(ax, az));
+        }
+        var column = area[4];
+        for (var stage = ChunkStatus.NOISE; ; stage = stage.next()) {
+            runStage(column, stage, area, false);
+            if (stage == ChunkStatus.LIGHT)
+                return column;
+        }
+    }
+
+    /**
+     * Generate columns in parallel, blocking until all of them are done.
+     *
+     * @param positions the packed column positions, with y = 0
+     * @return the columns, in the same order as {@code positions}
+     */
+    public ProtoColumn[] generateColumns(long[] positions) {
+        var result = new ProtoColumn[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            result[i] = getOrCreateRequested(BlockPos.xFromLong(positions[i]), BlockPos.zFromLong(positions[i]));
+        }
+        while (true) {
+            boolean done = true;
+            for (var column : result) {
+                if (!schedule(column, ChunkStatus.LIGHT))
+                    done = false;
+            }
+            if (done) {
+                for (var column : result) {
+                    handOut(column);
+                }
+                dropHandedOut();
+                return result;
+            }
+            if (running == 0)
+                throw new IllegalStateException("Generation stalled with no running stage");
+            try {
+                onCompleted(completed.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating", e);
+            }
+            drainCompleted();
+        }
+    }
+
+    /**
+     * Request a column to be generated to the end. Requesting a column twice
+     * has no effect until it is handed out by {@link #update}.
+     *
+     * @param x the chunk x
+     * @param z the chunk z
+     */
+    public void request(int x, int z) {
+        var column = getOrCreateRequested(x, z);
+        if (!column.requested) {
+            column.requested = true;
+            requests.add(column);
+        }
+    }
+
+    /**
+     * Collect the finished stages, schedule the next ones and hand out the
+     * requested columns that are done, in request order.
+     *
+     * @param consumer the consumer of the done columns
+     */
+    public void update(Consumer<ProtoColumn> consumer) {
+        drainCompleted();
+        requests.removeIf(column -> {
+            if (schedule(column, ChunkStatus.LIGHT)) {
+                column.requested = false;
+                handOut(column);
+                consumer.accept(column);
+                return true;
+            }
+            return false;
+        });
+        dropHandedOut();
+    }
+
+    /**
+     * Forget the columns and requests farther than {@code radius} columns.
+     * Running columns are kept until their stage finishes.
+     *
+     * @param x      the center chunk x
+     * @param z      the center chunk z
+     * @param radius the radius in chunks
+     */
+    public void retain(int x, int z, int radius) {
+        requests.removeIf(column -> {
+            if (Math.abs(column.x - x) > radius || Math.abs(column.z - z) > radius) {
+                column.requested = false;
+                return true;
+            }
+            return false;
+        });
+        columns.values().removeIf(column -> !column.running
+            && (Math.abs(column.x - x) > radius || Math.abs(column.z - z) > radius));
+    }
+
+    /**
+     * Forget all columns and requests that are not running.
+     */
+    public void clear() {
+        for (var column : requests) {
+            column.requested = false;
+        }
+        requests.clear();
+        columns.values().removeIf(column -> !column.running);
+    }
+
+    public int[] generateHeightmap(int x, int z) {
+        return SimplexHeightmap.generate(noise,
+            sampling,
+            x << 4,
+            z << 4,
+            CHUNK_SIZE,
+            CHUNK_SIZE,
+            world.height,
+            terrainScale);
+    }
+
+    /**
+     * Get the count of requested columns not handed out yet.
+     *
+     * @return the count
+     */
+    public int getPendingCount() {
+        return requests.size();
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public NoiseSampling getSampling() {
+        return sampling;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private ProtoColumn getOrCreate(int x, int z) {
+        long pos = BlockPos.getLongValue(x, 0, z);
+        var column = columns.get(pos);
+        if (column == null) {
+            column = new ProtoColumn(world, x, z, ySections);
+            columns.put(pos, column);
+        }
+        return column;
+    }
+
+    /**
+     * Get a column to generate to the end. The stand-in of a column handed
+     * out before is replaced by a new column.
+     */
+    private ProtoColumn getOrCreateRequested(int x, int z) {
+        var column = getOrCreate(x, z);
+        if (column.handedOut) {
+            column = new ProtoColumn(world, x, z, ySections);
+            columns.put(column.getPos(), column);
+        }
+        return column;
+    }
+
+    /**
+     * Replace a done column by its stand-in, so the generator doesn't keep
+     * the chunks the world owns now.
+     */
+    private void handOut(ProtoColumn column) {
+        columns.put(column.getPos(), new ProtoColumn(column));
+    }
+
+    /**
+     * Drop the stand-ins no neighbour needs any more: the ones without a
+     * neighbour in generation short of {@link ChunkStatus#FEATURES}.
+     */
+    private void dropHandedOut() {
+        var dropping = new LongArrayList();
+        for (var column : columns.values()) {
+            if (column.handedOut && !isNeededByNeighbour(column))
+                dropping.add(column.getPos());
+        }
+        for (int i = 0; i < dropping.size(); i++) {
+            columns.remove(dropping.getLong(i));
+        }
+    }
+
+    private boolean isNeededByNeighbour(ProtoColumn column) {
+        int radius = ChunkStatus.FEATURES.getNeighbourRadius();
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                var neighbour = columns.get(BlockPos.getLongValue(column.x + dx, 0, column.z + dz));
+                if (neighbour != null && !neighbour.handedOut && !neighbour.getStatus().isAtLeast(ChunkStatus.FEATURES))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move a column towards a status, starting its next stage if the
+     * neighbours it needs are ready.
+     *
+     * @param column the column
+     * @param target the status to reach
+     * @return {@code true} if the column has reached the status
+     */
+    private boolean schedule(ProtoColumn column, ChunkStatus target) {
+        if (column.getStatus().isAtLeast(target))
+            return true;
+        if (!column.target.isAtLeast(target))
+            column.target = target;
+        if (column.running)
+            return false;
+        var next = column.getStatus().next();
+        int radius = next.getNeighbourRadius();
+        int side = radius * 2 + 1;
+        var area = new ProtoColumn[side * side];
+        boolean ready = true;
+        for (int i = 0; i < area.length; i++) {
+            int dx = i % side - radius;
+            int dz = i / side - radius;
+            if (dx == 0 && dz == 0) {
+                area[i] = column;
+            } else {
+                area[i] = getOrCreate(column.x + dx, column.z + dz);
+                if (!schedule(area[i], next.getNeighbourStatus()))
+                    ready = false;
+            }
+        }
+        if (ready) {
+            column.running = true;
+            ++running;
+            pool.execute(new StageTask(column, area));
+        }
+        return false;
+    }
+
+    private void drainCompleted() {
+        ProtoColumn column;
+        while ((column = completed.poll()) != null) {
+            onCompleted(column);
+        }
+    }
+
+    private void onCompleted(ProtoColumn column) {
+        column.running = false;
+        --running;
+        var failure = column.failure;
+        if (failure != null) {
+            column.failure = null;
+            throw new IllegalStateException("Failed to generate column " + column.x + ", " + column.z, failure);
+        }
+    }
+
+    private void runStage(ProtoColumn column, ChunkStatus stage, ProtoColumn[] area, boolean parallel) {
+        switch (stage) {
+            case NOISE -> generateNoise(column, parallel);
+            case SURFACE -> generateSurface(column);
+            case FEATURES -> placeFeatures(column, area);
+            case LIGHT -> generateLight(column);
+        }
+        column.setStatus(stage);
+    }
+
+    /**
+     * Generate the heightmap and fill stone below it.
+     */
+    private void generateNoise(ProtoColumn column, boolean parallel) {
+        var hm = generateHeightmap(column.x, column.z);
+        column.setHeightmap(hm);
+        var chunks = column.getChunks();
+        if (parallel) {
+            var tasks = new SectionTask[chunks.length];
+            for (int y = 0; y < chunks.length; y++) {
+                tasks[y] = new SectionTask(chunks[y], hm);
+            }
+            RecursiveAction.invokeAll(tasks);
+        } else {
+            for (var chunk : chunks) {
+                fillStone(chunk, hm);
+            }
+        }
+    }
+
+    private void fillStone(WorldChunk chunk, int[] hm) {
+        int y0 = chunk.y << 4;
+        for (int lx = 0; lx < CHUNK_SIZE; lx++) {
+            for (int lz = 0; lz < CHUNK_SIZE; lz++) {
+                int y1 = Math.min(Math.min(hm[lx + lz * CHUNK_SIZE], world.height) - y0, CHUNK_SIZE);
+                for (int ly = 0; ly < y1; ly++) {
+                    chunk.setBlockState(lx, ly, lz, Blocks.STONE);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace the top of the stone with dirt and grass, and the bottom with
+     * bedrock.
+     */
+    private void generateSurface(ProtoColumn column) {
+        var hm = column.getHeightmap();
+        var chunks = column.getChunks();
+        for (int lx = 0; lx < CHUNK_SIZE; lx++) {
+            for (int lz = 0; lz < CHUNK_SIZE; lz++) {
+                int h = hm[lx + lz * CHUNK_SIZE];
+                for (int y = Math.max(h - 5, 1); y < h && y < world.height; y++) {
+                    chunks[y >> 4].setBlockState(lx, y & 15, lz, y == h - 1 ? Blocks.GRASS_BLOCK : Blocks.DIRT);
+                }
+                chunks[0].setBlockState(lx, 0, lz, Blocks.BEDROCK);
+            }
+        }
+        for (var chunk : chunks) {
+            chunk.getSection().compact();
+        }
+    }
+
+    /**
+     * Place the cobblestone boulders of this column and its neighbours that
+     * reach into this column. A boulder only depends on the heightmap of the
+     * column it starts in, and only fills air.
+     */
+    private void placeFeatures(ProtoColumn column, ProtoColumn[] area) {
+        var chunks = column.getChunks();
+        int minX = column.x << 4;
+        int minZ = column.z << 4;
+        for (var origin : area) {
+            var random = new Random(world.seed ^ (origin.x * 341873128712L + origin.z * 132897987541L));
+            if (random.nextInt(BOULDER_RARITY) != 0)
+                continue;
+            int lx = random.nextInt(CHUNK_SIZE);
+            int lz = random.nextInt(CHUNK_SIZE);
+            int r = 1 + random.nextInt(2);
+            int cx = (origin.x << 4) + lx;
+            int cy = origin.getHeightmap()[lx + lz * CHUNK_SIZE];
+            int cz = (origin.z << 4) + lz;
+            int x0 = Math.max(cx - r, minX), x1 = Math.min(cx + r, minX + CHUNK_SIZE - 1);
+            int z0 = Math.max(cz - r, minZ), z1 = Math.min(cz + r, minZ + CHUNK_SIZE - 1);
+            int y0 = Math.max(cy - r, 1), y1 = Math.min(cy + r, world.height - 1);
+            for (int x = x0; x <= x1; x++) {
+                for (int y = y0; y <= y1; y++) {
+                    for (int z = z0; z <= z1; z++) {
+                        int dx = x - cx, dy = y - cy, dz = z - cz;
+                        if (dx * dx + dy * dy + dz * dz > r * r + r)
+                            continue;
+                        var chunk = chunks[y >> 4];
+                        if (chunk.getBlockState(x & 15, y & 15, z & 15).isAir())
+                            chunk.setBlockState(x & 15, y & 15, z & 15, Blocks.COBBLESTONE);
+                    }
+                }
+            }
+        }
+        for (var chunk : chunks) {
+            chunk.getSection().compact();
+        }
+    }
+
+    private void generateLight(ProtoColumn column) {
+        var chunks = column.getChunks();
+        var lightmap = column.getLightmap();
+        for (int lx = 0; lx < CHUNK_SIZE; lx++) {
+            for (int lz = 0; lz < CHUNK_SIZE; lz++) {
+                int y = world.height - 1;
+                while (y > 0 && !chunks[y >> 4].getBlockState(lx, y & 15, lz).isOpaque()) --y;
+                lightmap[lx + lz * CHUNK_SIZE] = y;
+            }
+        }
+    }
+
+    /**
+     * Runs the next stage of a column, then the stages after it as far as the
+     * target while they don't need neighbours.
+     */
+    private final class StageTask extends RecursiveAction {
+        private final ProtoColumn column;
+        private final ProtoColumn[] area;
+
+        private StageTask(ProtoColumn column, ProtoColumn[] area) {
+            this.column = column;
+            this.area = area;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                var stage = column.getStatus().next();
+                runStage(column, stage, area, true);
+                while (stage != ChunkStatus.LIGHT && !column.getStatus().isAtLeast(column.target)) {
+                    stage = stage.next();
+                    if (stage.getNeighbourRadius() > 0)
+                        break;
+                    runStage(column, stage, area, true);
+                }
+            } catch (Throwable t) {
+                column.failure = t;
+            } finally {
+                completed.add(column);
+            }
+        }
+    }
+
+    private final class SectionTask extends RecursiveAction {
+        private final WorldChunk chunk;
+        private final int[] hm;
+
+        private SectionTask(WorldChunk chunk, int[] hm) {
+            this.chunk = chunk;
+            this.hm = hm;
+        }
+
+        @Override
+        protected void compute() {
+            fillStone(chunk, hm);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.gen;
+
+import jdk.incubator.vector.*;
+
+import static org.overrun.tepv3.world.gen.SimplexNoiseSampler.*;
+
+/**
+ * The vector API path of {@link SimplexNoiseSampler}.
+ * <p>
+ * Only loaded when {@code jdk.incubator.vector} is in the boot layer.
+ * Lanes sample consecutive x; the columns that don't fill a whole vector
+ * fall back to the scalar path.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+final class VectorSimplexNoise {
+    private static final VectorSpecies<Float> FS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> IS = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = FS.length();
+    private static final float[] IOTA = new float[LANES];
+    private static final ThreadLocal<int[]> INDICES = ThreadLocal.withInitial(() -> new int[LANES]);
+
+    static {
+        for (int i = 0; i < LANES; i++) {
+            IOTA[i] = i;
+        }
+    }
+
+    private VectorSimplexNoise() {
+    }
+
+    static void add(SimplexNoiseSampler sampler,
+                    float[] dest,
+                    int w,
+                    int d,
+                    float x0,
+                    float z0,
+                    float step,
+                    float freq,
+                    float amp) {
+        int bound = IS.length() == LANES ? FS.loopBound(w) : 0;
+        if (bound > 0) {
+            final int[] perm = sampler.perm;
+            final int[] permGrad = sampler.permGrad;
+            final int[] idx = INDICES.get();
+            final FloatVector iota = FloatVector.fromArray(FS, IOTA, 0);
+            for (int j = 0; j < d; j++) {
+                float z = (z0 + (float) j * step) * freq;
+                FloatVector y = FloatVector.broadcast(FS, z);
+                int row = j * w;
+                for (int i = 0; i < bound; i += LANES) {
+                    FloatVector x = iota.add((float) i).mul(step).add(x0).mul(freq);
+                    FloatVector s = x.add(y).mul(F2);
+                    IntVector vi = floor(x.add(s));
+                    IntVector vj = floor(y.add(s));
+                    FloatVector t = toFloat(vi.add(vj)).mul(G2);
+                    FloatVector xc0 = x.sub(toFloat(vi).sub(t));
+                    FloatVector yc0 = y.sub(toFloat(vj).sub(t));
+                    VectorMask<Float> upper = xc0.compare(VectorOperators.GT, yc0);
+                    IntVector i1 = IntVector.zero(IS).blend(1, upper.cast(IS));
+                    IntVector j1 = IntVector.broadcast(IS, 1).sub(i1);
+                    FloatVector xc1 = xc0.sub(toFloat(i1)).add(G2);
+                    FloatVector yc1 = yc0.sub(toFloat(j1)).add(G2);
+                    FloatVector xc2 = xc0.add(G2_2);
+                    FloatVector yc2 = yc0.add(G2_2);
+                    IntVector ii = vi.and(255);
+                    IntVector jj = vj.and(255);
+                    IntVector g0 = gather(permGrad, ii.add(gather(perm, jj, idx)), idx);
+                    IntVector g1 = gather(permGrad, ii.add(i1).add(gather(perm, jj.add(j1), idx)), idx);
+                    IntVector g2 = gather(permGrad, ii.add(1).add(gather(perm, jj.add(1), idx)), idx);
+                    FloatVector n = corner(g0, xc0, yc0, idx)
+                        .add(corner(g1, xc1, yc1, idx))
+                        .add(corner(g2, xc2, yc2, idx));
+                    FloatVector.fromArray(FS, dest, row + i)
+                        .add(n.mul(70.0f).mul(amp))
+                        .intoArray(dest, row + i);
+                }
+            }
+        }
+        if (bound < w) {
+            sampler.addScalar(dest, bound, w, d, w, x0, z0, step, freq, amp);
+        }
+    }
+
+    private static FloatVector corner(IntVector g, FloatVector x, FloatVector y, int[] idx) {
+        g.intoArray(idx, 0);
+        FloatVector gx = FloatVector.fromArray(FS, GRAD_X, 0, idx, 0);
+        FloatVector gy = FloatVector.fromArray(FS, GRAD_Y, 0, idx, 0);
+        FloatVector t = FloatVector.broadcast(FS, 0.5f).sub(x.mul(x)).sub(y.mul(y)).max(0.0f);
+        t = t.mul(t);
+        return t.mul(t).mul(gx.mul(x).add(gy.mul(y)));
+    }
+
+    private static IntVector gather(int[] table, IntVector index, int[] idx) {
+        index.intoArray(idx, 0);
+        return IntVector.fromArray(IS, table, 0, idx, 0);
+    }
+
+    private static IntVector floor(FloatVector v) {
+        IntVector i = (IntVector) v.convert(VectorOperators.F2I, 0);
+        return i.sub(1, v.compare(VectorOperators.LT, toFloat(i)).cast(IS));
+    }
+
+    private static FloatVector toFloat(IntVector v) {
+        return (FloatVector) v.convert(VectorOperators.I2F, 0);
+    }
+}
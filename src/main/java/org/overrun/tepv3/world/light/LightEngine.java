@@ -0,0 +1,586 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2022 Overrun Organization
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package org.overrun.tepv3.world.light;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.overrun.tepv3.util.BlockPos;
+import org.overrun.tepv3.world.block.Block;
+import org.overrun.tepv3.world.chunk.NibbleArray;
+import org.overrun.tepv3.world.chunk.PalettedContainer;
+import org.overrun.tepv3.world.chunk.WorldChunk;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.overrun.tepv3.world.Chunk.CHUNK_SIZE;
+
+/**
+ * <h2>The light engine</h2>
+ * Computes 0-15 sky and block light by flood fill, per section in
+ * {@link NibbleArray nibble arrays}.
+ * <p>
+ * Sky light enters from above the build height and keeps 15 straight down
+ * through transparent blocks; otherwise light loses 1 per block and stops at
+ * opaque blocks. Edits run a decrease pass, which clears the light that came
+ * through the changed block, then an increase pass, which refills it from
+ * the remaining sources. Both are BFS over queues of packed longs and only
+ * touch the affected volume.
+ * </p>
+ * <p>
+ * The engine keeps its own copy of the block opacity and emission, fed by
+ * {@link #addColumn}, {@link #removeColumn} and {@link #blockChanged}, so it
+ * never reads chunks the world may be editing. The changes are applied in
+ * order, either by {@link #runUpdates()} on the calling thread or on a
+ * background thread after {@link #start()}. The light of every changed
+ * section is then published as a copy, taken by {@link #pollPublished()}.
+ * </p>
+ * <p>
+ * Light that came from a column is left in its neighbours when it unloads.
+ * </p>
+ *
+ * @author squid233
+ * @since 3.0.1
+ */
+public class LightEngine implements AutoCloseable {
+    public static final int MAX_LIGHT = 15;
+    public static final int MAX_HEIGHT = 1024;
+    private static final int[] DX = {-1, 1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, -1, 1};
+    private static final int DOWN = 2;
+    private static final float[] BRIGHTNESS = new float[MAX_LIGHT + 1];
+    private final int height;
+    private final int ySections;
+    // The engine state, only touched by the thread running the updates
+    private final Long2ObjectOpenHashMap<LightSection> sections = new Long2ObjectOpenHashMap<>();
+    private final LongArrayFIFOQueue skyDecrease = new LongArrayFIFOQueue();
+    private final LongArrayFIFOQueue skyIncrease = new LongArrayFIFOQueue();
+    private final LongArrayFIFOQueue blockDecrease = new LongArrayFIFOQueue();
+    private final LongArrayFIFOQueue blockIncrease = new LongArrayFIFOQueue();
+    private final LongOpenHashSet changed = new LongOpenHashSet();
+    private final LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<SectionLight> published = new ConcurrentLinkedQueue<>();
+    private volatile Thread thread;
+
+    static {
+        for (int i = 0; i <= MAX_LIGHT; i++) {
+            BRIGHTNESS[i] = 0.2f + 0.8f * (float) Math.pow(0.8, MAX_LIGHT - i);
+        }
+    }
+
+    public LightEngine(int height) {
+        if (height > MAX_HEIGHT)
+            throw new IllegalArgumentException("Height must not exceed " + MAX_HEIGHT + "; got " + height);
+        this.height = height;
+        ySections = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * Pack a block position and a light level.
+     * <p>
+     * x and z take 25 bits each, y 10 bits and the level 4 bits.
+     * </p>
+     *
+     * @param x     the block x
+     * @param y     the block y
+     * @param z     the block z
+     * @param level the light level
+     * @return the packed value
+     */
+    public static long pack(int x, int y, int z, int level) {
+        return (x & 0x1FFFFFFL) << 39 | (z & 0x1FFFFFFL) << 14 | (y & 0x3FFL) << 4 | level;
+    }
+
+    public static int unpackX(long l) {
+        return (int) (l >>> 39) << 7 >> 7;
+    }
+
+    public static int unpackY(long l) {
+        return (int) (l >>> 4) & 0x3FF;
+    }
+
+    public static int unpackZ(long l) {
+        return (int) (l >>> 14) << 7 >> 7;
+    }
+
+    public static int unpackLevel(long l) {
+        return (int) l & 15;
+    }
+
+    /**
+     * Add a loaded column. Its blocks are read on the calling thread.
+     *
+     * @param x      the chunk x
+     * @param z      the chunk z
+     * @param chunks the chunks from bottom to top
+     */
+    public void addColumn(int x, int z, WorldChunk[] chunks) {
+        var opaque = new long[ySections][];
+        var emission = new NibbleArray[ySections];
+        for (int sy = 0; sy < ySections; sy++) {
+            var chunk = chunks[sy];
+            opaque[sy] = chunk.getSection().getOpaqueMask().clone();
+            if (chunk.isEmpty())
+                continue;
+            if (chunk.getSection().getBlocks().isSingleValue()) {
+                var block = chunk.getBlockState(0, 0, 0);
+                if (block.getLuminance() > 0)
+                    emission[sy] = new NibbleArray(block.getLuminance());
+                continue;
+            }
+            for (int i = 0; i < NibbleArray.SIZE; i++) {
+                var block = chunk.getBlockState(i & 15, i >> 8, i >> 4 & 15);
+                int luminance = block.getLuminance();
+                if (luminance > 0) {
+                    if (emission[sy] == null)
+                        emission[sy] = new NibbleArray();
+                    emission[sy].set(i, luminance);
+                }
+            }
+        }
+        tasks.add(() -> onColumnAdded(x, z, opaque, emission));
+    }
+
+    /**
+     * Remove an unloaded column.
+     *
+     * @param x the chunk x
+     * @param z the chunk z
+     */
+    public void removeColumn(int x, int z) {
+        tasks.add(() -> {
+            for (int sy = 0; sy < ySections; sy++) {
+                sections.remove(BlockPos.getLongValue(x, sy, z));
+            }
+        });
+    }
+
+    /**
+     * Update the light for a changed block.
+     *
+     * @param x     the block x
+     * @param y     the block y
+     * @param z     the block z
+     * @param block the new block
+     */
+    public void blockChanged(int x, int y, int z, Block block) {
+        boolean opaque = block.isOpaque();
+        int luminance = block.getLuminance();
+        tasks.add(() -> onBlockChanged(x, y, z, opaque, luminance));
+    }
+
+    /**
+     * Get the color multiplier of a light level.
+     *
+     * @param light the light level, 0 to 15
+     * @return the brightness, 0.2 to 1
+     */
+    public static float getBrightness(int light) {
+        return BRIGHTNESS[light];
+    }
+
+    /**
+     * Update the light for a batch of changed blocks, as one update.
+     *
+     * @param changes the changes, packed by {@link #pack} with the luminance
+     *                as the level
+     * @param opaque  whether each new block is opaque, by change index
+     */
+    public void blocksChanged(long[] changes, BitSet opaque) {
+        tasks.add(() -> {
+            for (int i = 0; i < changes.length; i++) {
+                long change = changes[i];
+                onBlockChanged(unpackX(change), unpackY(change), unpackZ(change), opaque.get(i), unpackLevel(change));
+            }
+        });
+    }
+
+    /**
+     * Run the pending changes on a background thread from now on.
+     */
+    public void start() {
+        if (thread != null)
+            return;
+        var t = new Thread(this::runLoop, "Light Engine");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    /**
+     * Run the pending changes on the calling thread and publish the changed
+     * sections. Does nothing while the background thread is running.
+     */
+    public void runUpdates() {
+        if (thread == null)
+            runPending();
+    }
+
+    /**
+     * Take a published section light.
+     *
+     * @return the light, or {@code null} if nothing is published
+     */
+    public SectionLight pollPublished() {
+        return published.poll();
+    }
+
+    /**
+     * Check whether any change is waiting to be run.
+     *
+     * @return {@code true} if there is a pending change
+     */
+    public boolean hasPendingUpdates() {
+        return !tasks.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        var t = thread;
+        thread = null;
+        if (t != null)
+            t.interrupt();
+    }
+
+    private void runLoop() {
+        while (thread == Thread.currentThread()) {
+            Runnable task;
+            try {
+                task = tasks.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            task.run();
+            runPending();
+        }
+    }
+
+    private void runPending() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+        propagate(true, skyDecrease, skyIncrease);
+        propagate(false, blockDecrease, blockIncrease);
+        publish();
+    }
+
+    private void publish() {
+        var it = changed.iterator();
+        while (it.hasNext()) {
+            long key = it.nextLong();
+            var section = sections.get(key);
+            if (section != null) {
+                published.add(new SectionLight(BlockPos.xFromLong(key),
+                    BlockPos.yFromLong(key),
+                    BlockPos.zFromLong(key),
+                    section.sky.copy(),
+                    section.block.copy()));
+            }
+        }
+        changed.clear();
+    }
+
+    private void onColumnAdded(int cx, int cz, long[][] opaque, NibbleArray[] emission) {
+        for (int sy = 0; sy < ySections; sy++) {
+            var section = new LightSection(opaque[sy], emission[sy]);
+            sections.put(BlockPos.getLongValue(cx, sy, cz), section);
+            changed.add(BlockPos.getLongValue(cx, sy, cz));
+        }
+        int x0 = cx << 4;
+        int z0 = cz << 4;
+        // Sky light straight down, then spread sideways from the lit blocks
+        // next to darker ones
+        for (int x = x0; x < x0 + CHUNK_SIZE; x++) {
+            for (int z = z0; z < z0 + CHUNK_SIZE; z++) {
+                for (int y = height - 1; y >= 0; y--) {
+                    var section = section(x, y, z);
+                    int i = index(x, y, z);
+                    if (section.isOpaque(i))
+                        break;
+                    section.sky.set(i, MAX_LIGHT);
+                }
+            }
+        }
+        for (int x = x0; x < x0 + CHUNK_SIZE; x++) {
+            for (int z = z0; z < z0 + CHUNK_SIZE; z++) {
+                for (int y = height - 1; y >= 0; y--) {
+                    var section = section(x, y, z);
+                    int i = index(x, y, z);
+                    if (section.sky.get(i) != MAX_LIGHT)
+                        break;
+                    for (int d = 0; d < 6; d++) {
+                        if (DY[d] != 0)
+                            continue;
+                        var n = section(x + DX[d], y, z + DZ[d]);
+                        if (n != null) {
+                            int ni = index(x + DX[d], y, z + DZ[d]);
+                            if (!n.isOpaque(ni) && n.sky.get(ni) < MAX_LIGHT - 1) {
+                                skyIncrease.enqueue(pack(x, y, z, MAX_LIGHT));
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (int sy = 0; sy < ySections; sy++) {
+            var em = emission[sy];
+            if (em == null)
+                continue;
+            var section = sections.get(BlockPos.getLongValue(cx, sy, cz));
+            for (int i = 0; i < NibbleArray.SIZE; i++) {
+                int level = em.get(i);
+                if (level > 0) {
+                    section.block.set(i, level);
+                    blockIncrease.enqueue(pack(x0 + (i & 15), (sy << 4) + (i >> 8), z0 + (i >> 4 & 15), level));
+                }
+            }
+        }
+        // The light of the neighbour borders flows in
+        for (int d = 0; d < 6; d++) {
+            if (DY[d] != 0)
+                continue;
+            int x1 = DX[d] < 0 ? x0 - 1 : DX[d] > 0 ? x0 + CHUNK_SIZE : -1;
+            int z1 = DZ[d] < 0 ? z0 - 1 : DZ[d] > 0 ? z0 + CHUNK_SIZE : -1;
+            for (int j = 0; j < CHUNK_SIZE; j++) {
+                int x = x1 != -1 ? x1 : x0 + j;
+                int z = z1 != -1 ? z1 : z0 + j;
+                for (int y = 0; y < height; y++) {
+                    var n = section(x, y, z);
+                    if (n == null)
+                        break;
+                    int ni = index(x, y, z);
+                    int sky = n.sky.get(ni);
+                    if (sky > 1)
+                        skyIncrease.enqueue(pack(x, y, z, sky));
+                    int block = n.block.get(ni);
+                    if (block > 1)
+                        blockIncrease.enqueue(pack(x, y, z, block));
+                }
+            }
+        }
+    }
+
+    private void onBlockChanged(int x, int y, int z, boolean opaque, int luminance) {
+        var section = section(x, y, z);
+        if (section == null)
+            return;
+        int i = index(x, y, z);
+        section.setOpaque(i, opaque);
+        section.setEmission(i, luminance);
+        change(section, true, i, x, y, z, skyDecrease, skyIncrease);
+        change(section, false, i, x, y, z, blockDecrease, blockIncrease);
+    }
+
+    private void change(LightSection section,
+                        boolean sky,
+                        int i,
+                        int x,
+                        int y,
+                        int z,
+                        LongArrayFIFOQueue decrease,
+                        LongArrayFIFOQueue increase) {
+        var light = section.light(sky);
+        int old = light.get(i);
+        if (old > 0) {
+            light.set(i, 0);
+            markChanged(x, y, z);
+            decrease.enqueue(pack(x, y, z, old));
+        }
+        int source = sourceLevel(section, sky, i, y);
+        if (source > 0) {
+            light.set(i, source);
+            markChanged(x, y, z);
+            increase.enqueue(pack(x, y, z, source));
+        }
+        if (!section.isOpaque(i)) {
+            // Let the neighbours refill this block
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                if (ny < 0 || ny >= height)
+                    continue;
+                var n = section(nx, ny, nz);
+                if (n == null)
+                    continue;
+                int level = n.light(sky).get(index(nx, ny, nz));
+                if (level > 1)
+                    increase.enqueue(pack(nx, ny, nz, level));
+            }
+        }
+    }
+
+    private void propagate(boolean sky, LongArrayFIFOQueue decrease, LongArrayFIFOQueue increase) {
+        while (!decrease.isEmpty()) {
+            long entry = decrease.dequeueLong();
+            int x = unpackX(entry), y = unpackY(entry), z = unpackZ(entry);
+            int level = unpackLevel(entry);
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                if (ny < 0 || ny >= height)
+                    continue;
+                var n = section(nx, ny, nz);
+                if (n == null)
+                    continue;
+                int ni = index(nx, ny, nz);
+                var light = n.light(sky);
+                int nl = light.get(ni);
+                if (nl == 0)
+                    continue;
+                boolean straightDown = sky && d == DOWN && level == MAX_LIGHT;
+                if (nl < level || straightDown && nl == MAX_LIGHT) {
+                    // Possibly lit through this block; clear it and its
+                    // own dependents, keeping any source it has itself
+                    light.set(ni, 0);
+                    markChanged(nx, ny, nz);
+                    decrease.enqueue(pack(nx, ny, nz, nl));
+                    int source = sourceLevel(n, sky, ni, ny);
+                    if (source > 0) {
+                        light.set(ni, source);
+                        increase.enqueue(pack(nx, ny, nz, source));
+                    }
+                } else {
+                    // Lit from elsewhere; it refills the cleared volume
+                    increase.enqueue(pack(nx, ny, nz, nl));
+                }
+            }
+        }
+        while (!increase.isEmpty()) {
+            long entry = increase.dequeueLong();
+            int x = unpackX(entry), y = unpackY(entry), z = unpackZ(entry);
+            int level = unpackLevel(entry);
+            // Skip the entries a later edit or a brighter entry replaced
+            var section = section(x, y, z);
+            if (section == null || section.light(sky).get(index(x, y, z)) != level)
+                continue;
+            for (int d = 0; d < 6; d++) {
+                int nx = x + DX[d], ny = y + DY[d], nz = z + DZ[d];
+                if (ny < 0 || ny >= height)
+                    continue;
+                var n = section(nx, ny, nz);
+                if (n == null)
+                    continue;
+                int ni = index(nx, ny, nz);
+                if (n.isOpaque(ni))
+                    continue;
+                int nl = sky && d == DOWN && level == MAX_LIGHT ? MAX_LIGHT : level - 1;
+                var light = n.light(sky);
+                if (light.get(ni) < nl) {
+                    light.set(ni, nl);
+                    markChanged(nx, ny, nz);
+                    if (nl > 1)
+                        increase.enqueue(pack(nx, ny, nz, nl));
+                }
+            }
+        }
+    }
+
+    private int sourceLevel(LightSection section, boolean sky, int i, int y) {
+        if (sky)
+            return y == height - 1 && !section.isOpaque(i) ? MAX_LIGHT : 0;
+        return section.getEmission(i);
+    }
+
+    private LightSection section(int x, int y, int z) {
+        return sections.get(BlockPos.getLongValue(x >> 4, y >> 4, z >> 4));
+    }
+
+    private void markChanged(int x, int y, int z) {
+        changed.add(BlockPos.getLongValue(x >> 4, y >> 4, z >> 4));
+    }
+
+    private static int index(int x, int y, int z) {
+        return PalettedContainer.index(x & 15, y & 15, z & 15);
+    }
+
+    /**
+     * The light of a section, published by the engine.
+     *
+     * @author squid233
+     * @since 3.0.1
+     */
+    public static final class SectionLight {
+        /**
+         * The chunk coordinates.
+         */
+        public final int x, y, z;
+        public final NibbleArray sky, block;
+
+        private SectionLight(int x, int y, int z, NibbleArray sky, NibbleArray block) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.sky = sky;
+            this.block = block;
+        }
+    }
+
+    private static final class LightSection {
+        private final long[] opaque;
+        private NibbleArray emission;
+        private final NibbleArray sky = new NibbleArray();
+        private final NibbleArray block = new NibbleArray();
+
+        private LightSection(long[] opaque, NibbleArray emission) {
+            this.opaque = opaque;
+            this.emission = emission;
+        }
+
+        private boolean isOpaque(int i) {
+            return (opaque[i >> 6] & 1L << i) != 0;
+        }
+
+        private void setOpaque(int i, boolean value) {
+            if (value)
+                opaque[i >> 6] |= 1L << i;
+            else
+                opaque[i >> 6] &= ~(1L << i);
+        }
+
+        private int getEmission(int i) {
+            return emission == null ? 0 : emission.get(i);
+        }
+
+        private void setEmission(int i, int level) {
+            if (emission == null) {
+                if (level == 0)
+                    return;
+                emission = new NibbleArray();
+            }
+            emission.set(i, level);
+        }
+
+        private NibbleArray light(boolean sky) {
+            return sky ? this.sky : block;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+#version 150 core
+
+in vec3 Position;
+in uint Color;
+in ivec2 UV0;
+in vec4 UV1;
+
+out vec4 vertexColor;
+out vec2 texCoord0;
+flat out vec4 sprite;
+
+uniform mat4 ProjMat;
+uniform mat4 ModelViewMat;
+uniform vec3 ChunkOffset;
+
+void main() {
+    // The position is in 1/256 block from the centre of the draw group,
+    // which ChunkOffset holds
+    gl_Position = ProjMat * ModelViewMat * vec4(ChunkOffset + Position / 256.0, 1.0);
+    // The colour is RGB565
+    vertexColor = vec4(float(Color >> 11u) / 31.0,
+                       float(Color >> 5u & 63u) / 63.0,
+                       float(Color & 31u) / 31.0,
+                       1.0);
+    // The tex coords are in 1/1024 sprite
+    texCoord0 = vec2(UV0) / 1024.0;
+    sprite = UV1;
+}
@@ -0,0 +1,20 @@
+#version 150 core
+
+in vec4 vertexColor;
+in vec2 texCoord0;
+flat in vec4 sprite;
+
+out vec4 fragColor;
+
+uniform sampler2D Sampler0;
+uniform vec4 ColorModulator;
+
+void main() {
+    // The tex coords count sprites; repeat the sprite across the quad
+    vec2 uv = sprite.xy + fract(texCoord0) * sprite.zw;
+    vec4 color = texture(Sampler0, uv) * vertexColor;
+    if (color.a < 0.1) {
+        discard;
+    }
+    fragColor = color * ColorModulator;
+}